@@ -18,8 +18,12 @@
 */
 package com.lagovistatech.database;
 
+import java.io.InputStream;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 import com.lagovistatech.Guid;
@@ -92,6 +96,38 @@ public interface Adapter {
 	 * @throws Exception Errors encountered.
 	 */
 	void close() throws Exception;
+	/**
+	 * Checks the opened connection is still usable by the server.
+	 * 
+	 * @param timeOut Seconds to wait for the server to respond.
+	 * @return True if the connection is open and responding.
+	 * @throws Exception Errors encountered.
+	 */
+	boolean isValid(int timeOut) throws Exception;
+	
+	/**
+	 * Starts a SQL transaction.
+	 * 
+	 * @throws Exception Error encountered.
+	 */
+	void begin() throws Exception;
+	/**
+	 * Commits the SQL transaction.
+	 * 
+	 * @throws Exception Error encountered.
+	 */
+	void commit() throws Exception;
+	/**
+	 * Rolls back the SQL transaction.
+	 * 
+	 * @throws Exception Error encountered.
+	 */
+	void rollback() throws Exception;
+	/**
+	 * @return True if a transaction has been started and not yet committed or
+	 * rolled back.
+	 */
+	boolean isInTransaction();
 	
 	/**
 	 * Converts a native Java/SQL data type to a valid SQL literal for that data
@@ -121,6 +157,91 @@ public interface Adapter {
 	 * @throws Exception Error encountered.
 	 */
 	ResultSet fill(String sql) throws Exception;
+	/**
+	 * Executes the provided SQL query binding the named parameters as typed 
+	 * values of a prepared statement.  This query should not return any data
+	 * nor results.
+	 * 
+	 * @param sql Query to execute.
+	 * @param params Parameters to be bound to the query.
+	 * @return Number or rows modified.
+	 * @throws Exception Error encountered.
+	 */
+	long execute(String sql, Parameters params) throws Exception;
+	/**
+	 * Executes the provided SQL query binding the named parameters as typed
+	 * values of a prepared statement with the expectation that data or 
+	 * results will be returned.  The prepared statement may be cached, so the
+	 * result is only valid until the same query is executed again.
+	 * 
+	 * @param sql Query to execute.
+	 * @param params Parameters to be bound to the query.
+	 * @return Result of the query.
+	 * @throws Exception Error encountered.
+	 */
+	ResultSet fill(String sql, Parameters params) throws Exception;
+	
+	/**
+	 * @return Maximum number of statements sent to the server per batch.
+	 */
+	int getBatchSize();
+	/**
+	 * @param value Maximum number of statements sent to the server per batch.
+	 */
+	void setBatchSize(int value);
+	/**
+	 * Executes the provided SQL once for each set of values as a JDBC batch,
+	 * sending at most batch size statements per round trip.
+	 * 
+	 * @param sql Query with a JDBC placeholder for each value.
+	 * @param values Values for each execution, in placeholder order.
+	 * @return Number of rows modified by each execution.
+	 * @throws Exception Error encountered.
+	 */
+	long[] executeBatch(String sql, List<List<Object>> values) throws Exception;
+	
+	/**
+	 * @return Number of rows fetched per round trip when streaming.
+	 */
+	int getFetchSize();
+	/**
+	 * @param value Number of rows fetched per round trip when streaming.
+	 */
+	void setFetchSize(int value);
+	/**
+	 * Executes the provided SQL query binding the named parameters through a
+	 * server side cursor.  Rows are fetched from the server as the result is 
+	 * read, fetch size rows at a time.  This requires a transaction to be
+	 * started, and closing the result releases the cursor.
+	 * 
+	 * @param sql Query to execute.
+	 * @param params Parameters to be bound to the query.
+	 * @return Result of the query.
+	 * @throws Exception Error encountered.
+	 */
+	ResultSet stream(String sql, Parameters params) throws Exception;
+	
+	/**
+	 * @return Number of prepared statements kept for reuse by the adapter.
+	 */
+	int getStatementCacheSize();
+	/**
+	 * @param value Number of prepared statements kept for reuse by the 
+	 * adapter; zero disables the cache.
+	 */
+	void setStatementCacheSize(int value);
+	/**
+	 * @return Number of queries that reused a cached prepared statement.
+	 */
+	long getStatementCacheHits();
+	/**
+	 * @return Number of queries that had to prepare a new statement.
+	 */
+	long getStatementCacheMisses();
+	/**
+	 * @return Number of least recently used statements closed to make room.
+	 */
+	long getStatementCacheEvictions();
 	
 	/**
 	 * Take a literal string and provides a safe SQL literal identifier quoted
@@ -163,11 +284,176 @@ public interface Adapter {
 	 * @throws Exception
 	 */
 	String generateSave(Table<?> table, Map<String, Object> values, boolean isDel) throws Exception;
+	/**
+	 * Generate insert, update, and delete SQL query for versioned row where
+	 * updates only set the modified columns.
+	 * 
+	 * @param table Table the row belongs to
+	 * @param values Map of row values
+	 * @param modified Columns modified since the row was loaded
+	 * @param isDel If true, the row is to be deleted
+	 * @return SQL statement to update row in database
+	 * @throws Exception
+	 */
+	String generateSave(Table<?> table, Map<String, Object> values, Set<String> modified, boolean isDel) throws Exception;
+	/**
+	 * Generate insert, update, and delete statement with bound values for 
+	 * stateful row represented by original and changed values.
+	 * 
+	 * @param table Table the row belongs to
+	 * @param originals Map of original row values
+	 * @param changes Map of changed row values
+	 * @param isDel If true, the row is to be deleted
+	 * @return Statement to update row in database, or null if nothing to save
+	 * @throws Exception
+	 */
+	SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> originals, Map<String, Object> changes, boolean isDel) throws Exception;
+	/**
+	 * Generate insert, update, and delete statement with bound values for 
+	 * versioned row represented by its values.
+	 * 
+	 * @param table Table the row belongs to
+	 * @param values Map of row values
+	 * @param isDel If true, the row is to be deleted
+	 * @return Statement to update row in database, or null if nothing to save
+	 * @throws Exception
+	 */
+	SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> values, boolean isDel) throws Exception;
+	/**
+	 * Generate insert, update, and delete statement with bound values for 
+	 * versioned row where updates only set the modified columns.
+	 * 
+	 * @param table Table the row belongs to
+	 * @param values Map of row values
+	 * @param modified Columns modified since the row was loaded
+	 * @param isDel If true, the row is to be deleted
+	 * @return Statement to update row in database, or null if nothing to save
+	 * @throws Exception
+	 */
+	SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> values, Set<String> modified, boolean isDel) throws Exception;
+	
+	/**
+	 * Loads rows into a table with the COPY FROM STDIN protocol.
+	 * 
+	 * @param tableName Table to load.
+	 * @param columns Columns to fill, in value order.
+	 * @param values Values of each row.
+	 * @return Number of rows loaded.
+	 * @throws Exception Errors encountered or returned by server.
+	 */
+	long copyIn(String tableName, List<String> columns, List<List<Object>> values) throws Exception;
+
+	/**
+	 * Describes the columns the query would return without running it.
+	 * 
+	 * @param sql SQL query.
+	 * @param params Parameters to be bound in place of their names.
+	 * @return Description of the result columns.
+	 * @throws Exception Errors encountered or returned by server.
+	 */
+	ResultSetMetaData describe(String sql, Parameters params) throws Exception;
+	/**
+	 * Runs the query with the COPY TO STDOUT protocol in binary format.  
+	 * Parameters are written into the query as literals.
+	 * 
+	 * @param sql SQL query.
+	 * @param params Parameters to be replaced by literals.
+	 * @return Stream of the binary copy data; the stream must be closed.
+	 * @throws Exception Errors encountered or returned by server.
+	 */
+	InputStream copyOut(String sql, Parameters params) throws Exception;
+
+	/**
+	 * Selects the rows of a table whose key column matches any of the keys, 
+	 * bound as a single array parameter.
+	 * 
+	 * @param tableName Table to select from.
+	 * @param keyColumn Column to match.
+	 * @param keys Keys to match, all of the same type.
+	 * @return Result set of the matching rows.
+	 * @throws Exception Errors encountered or returned by server, or keys of
+	 * mixed types.
+	 */
+	ResultSet fillByKeys(String tableName, String keyColumn, Object[] keys) throws Exception;
+	/**
+	 * Reads the rows returned by one save command.
+	 */
+	interface ReturningReader {
+		/**
+		 * @param command Command that returned the rows.
+		 * @param rs Every column of the rows the command inserted, updated, or
+		 * deleted; combined inserts return their rows in value order.
+		 * @throws Exception Errors encountered.
+		 */
+		void read(SaveCommand command, ResultSet rs) throws Exception;
+	}
+	/**
+	 * Runs the save commands, returning the rows each one changed.  The 
+	 * commands are sent together, as many per round trip as the bind value 
+	 * limit allows, rather than one round trip each.
+	 * 
+	 * @param commands Statements to run.
+	 * @param reader Called with each command's rows, in command order.
+	 * @throws Exception Errors encountered or returned by server.
+	 */
+	void executeReturning(List<SaveCommand> commands, ReturningReader reader) throws Exception;
+	/**
+	 * Updates existing versioned rows by joining the table to a list of the
+	 * rows' GUID, version, and column values, sending as few statements as
+	 * the bind value limit allows.  Rows are only updated when their version
+	 * still matches.
+	 * 
+	 * @param table Table the rows belong to; its schema types the values.
+	 * @param columns Columns to set, the same for every row.
+	 * @param rows Values of each row, including the GUID and version.
+	 * @return New version of each row that was updated by GUID.  Rows left 
+	 * out hit a concurrency conflict.
+	 * @throws Exception Errors encountered or returned by server.
+	 */
+	Map<UUID, Long> updateVersioned(Table<?> table, Set<String> columns, List<Map<String, Object>> rows) throws Exception;
+
+	/**
+	 * Inserts versioned rows, or updates the existing rows with the same GUID
+	 * as the rule allows, combining rows into multi-row statements.
+	 * 
+	 * @param table Table the rows belong to.
+	 * @param columns Columns to insert or set, the same for every row.
+	 * @param rows Values of each row, including the GUID and the version the
+	 * row was read at.
+	 * @param rule What to do with rows that already exist.
+	 * @return New version of each row that was inserted or updated by GUID.
+	 * Rows left out were skipped by the rule.
+	 * @throws Exception Errors encountered or returned by server.
+	 */
+	Map<UUID, Long> upsertVersioned(Table<?> table, Set<String> columns, List<Map<String, Object>> rows, UpsertRule rule) throws Exception;
+
+	/**
+	 * @return Maximum number of rows combined into one multi-row insert.
+	 */
+	int getMaximumInsertRows();
+	/**
+	 * @param value Maximum number of rows combined into one multi-row insert;
+	 * one disables combining.
+	 */
+	void setMaximumInsertRows(int value);
+	/**
+	 * Combines consecutive inserts of the same columns into the same table
+	 * into multi-row inserts.  Every statement keeps its order relative to
+	 * the others, so rows may depend on the rows saved before them.
+	 * 
+	 * @param commands Statements to combine.
+	 * @return Combined statements.
+	 * @throws Exception
+	 */
+	List<SaveCommand> coalesce(List<SaveCommand> commands) throws Exception;
 	
 	/**
 	 * @return Random (version 4) GUID/UUID stored in 6 bytes.
 	 * @throws Exception
 	 */
 	public static byte[] createGuidBytes() { return Guid.computeBytes(); }
-	public static UUID createGuidUuid() { return Guid.computeUuid(); }
+	/**
+	 * @return GUID from the factory used for new versioned rows.
+	 */
+	public static UUID createGuidUuid() { return GuidFactory.instanciate(); }
 }
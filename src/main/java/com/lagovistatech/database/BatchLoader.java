@@ -0,0 +1,75 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The batch loader merges single row lookups by GUID, made by any number of
+ * threads, into one query per batch.  A batch is sent when the window since
+ * its first lookup has passed, or as soon as it reaches the maximum batch
+ * size.  Each batch borrows its own connection.
+ *
+ * @param <R> The type of the rows.
+ */
+public interface BatchLoader<R extends VersionedRow> {
+	/**
+	 * @return Milliseconds a batch waits for more lookups before it is sent.
+	 */
+	long getWindow();
+	/**
+	 * @param value Milliseconds a batch waits for more lookups before it is
+	 * sent.
+	 */
+	void setWindow(long value);
+
+	/**
+	 * @return Most lookups sent in one query.
+	 */
+	int getMaximumBatchSize();
+	/**
+	 * @param value Most lookups sent in one query.
+	 */
+	void setMaximumBatchSize(int value);
+
+	/**
+	 * Queues a lookup for the next batch.  Lookups of the same GUID in one
+	 * batch share a future.
+	 *
+	 * @param guid GUID of the row.
+	 * @return Future completed with the row, with null when no row has the
+	 * GUID, or exceptionally when the batch failed.
+	 */
+	CompletableFuture<R> load(UUID guid);
+
+	/**
+	 * Sends the pending lookups, then stops the loader's threads.
+	 */
+	void close();
+
+	/**
+	 * @return Number of lookups requested since the loader was created.
+	 */
+	long getLoadCount();
+	/**
+	 * @return Number of queries sent since the loader was created.
+	 */
+	long getBatchCount();
+}
@@ -0,0 +1,41 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.internal.BatchLoaderImp;
+
+/**
+ * Creates batch loaders for versioned tables.
+ */
+public class BatchLoaderFactory {
+	private BatchLoaderFactory() {}
+
+	/**
+	 * @param <R> The type of the rows.
+	 * @param connections Creates configured connections, such as a connection
+	 * pool; each batch opens and closes one.
+	 * @param rowFactory Row factory used to generate rows.
+	 * @param tableName Table to look rows up in.
+	 * @return A batch loader for the table.
+	 */
+	public static <R extends VersionedRow> BatchLoader<R> instanciate(Factory<Connection> connections, Factory<R> rowFactory, String tableName) {
+		return new BatchLoaderImp<R>(connections, rowFactory, tableName);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The column index maps column names to value slots.  An index is immutable
+ * and shared by the rows of a table, so each row only holds an array of 
+ * values.  Adding a column returns another index, which is shared by the
+ * rows that add the same columns in the same order.
+ * <p>
+ * The indexes added to are kept by the index they came from, so they live as
+ * long as it does: indexes of a table's columns go with the table, while
+ * those of new rows start from EMPTY and are kept for good.  Each index and
+ * the indexes added from it keep at most MAXIMUM_SHARED indexes; once full,
+ * adding a column returns a new index every time.  Indexes are safe to use
+ * from several threads.
+ */
+public class ColumnIndex {
+	/**
+	 * Most indexes kept from adding columns to an index and the indexes added
+	 * from it.
+	 */
+	public static final int MAXIMUM_SHARED = 1024;
+	/**
+	 * Index without columns that new rows start with.
+	 */
+	public static final ColumnIndex EMPTY = new ColumnIndex(new String[0], new AtomicInteger());
+	
+	/**
+	 * @param columns Column names in slot order; repeated names share the 
+	 * first name's slot.
+	 * @return New index of the columns, such as for the rows of a table.
+	 */
+	public static ColumnIndex of(String[] columns) {
+		LinkedHashSet<String> unique = new LinkedHashSet<String>(Arrays.asList(columns));
+		if(unique.size() == columns.length)
+			return new ColumnIndex(columns, new AtomicInteger());
+		return new ColumnIndex(unique.toArray(new String[0]), new AtomicInteger());
+	}
+	
+	/**
+	 * @param shared Count of indexes kept by the index this one came from.
+	 */
+	private ColumnIndex(String[] columns, AtomicInteger shared) {
+		this.columns = columns;
+		this.shared = shared;
+		this.slots = new HashMap<String, Integer>(columns.length * 2);
+		for(int cnt = 0; cnt < columns.length; cnt++)
+			slots.put(columns[cnt], cnt);
+	}
+
+	private String[] columns;
+	private HashMap<String, Integer> slots;
+	private AtomicInteger shared;
+	private ConcurrentHashMap<String, ColumnIndex> extensions = new ConcurrentHashMap<String, ColumnIndex>();
+	
+	/**
+	 * @return Column names in slot order.  Rows loaded with this exact array
+	 * keep the loaded values without copying.
+	 */
+	public String[] getColumns() { return columns; }
+	/**
+	 * @return Number of slots.
+	 */
+	public int size() { return columns.length; }
+	/**
+	 * @param column Column name.
+	 * @return Slot of the column, or -1 if it is not indexed.
+	 */
+	public int slotOf(String column) {
+		Integer ret = slots.get(column);
+		return ret == null ? -1 : ret;
+	}
+	/**
+	 * @param column Column name to add.
+	 * @return This index if it has the column, otherwise an index with the
+	 * column added in the last slot; shared unless MAXIMUM_SHARED indexes
+	 * are already kept.
+	 */
+	public ColumnIndex with(String column) {
+		if(slots.containsKey(column))
+			return this;
+		
+		ColumnIndex ret = extensions.get(column);
+		if(ret != null)
+			return ret;
+		
+		String[] added = Arrays.copyOf(columns, columns.length + 1);
+		added[columns.length] = column;
+		if(shared.get() >= MAXIMUM_SHARED)
+			return new ColumnIndex(added, new AtomicInteger(MAXIMUM_SHARED));
+		
+		ColumnIndex created = new ColumnIndex(added, shared);
+		ret = extensions.putIfAbsent(column, created);
+		if(ret != null)
+			return ret;
+		shared.incrementAndGet();
+		return created;
+	}
+}
@@ -0,0 +1,83 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+/**
+ * The columnar row is a read only view of one row of a columnar table.
+ */
+public class ColumnarRow {
+	/**
+	 * @param table Table holding the values.
+	 * @param index Index of the row in the table.
+	 */
+	public ColumnarRow(ColumnarTable table, int index) {
+		this.table = table;
+		this.index = index;
+	}
+	
+	private ColumnarTable table;
+	/**
+	 * @return Table holding the values.
+	 */
+	public ColumnarTable getTable() { return table; }
+	
+	private int index;
+	/**
+	 * @return Index of the row in the table.
+	 */
+	public int getIndex() { return index; }
+
+	/**
+	 * @param column Column of the value to fetch.
+	 * @return Value boxed as getObject would return it.
+	 */
+	public Object get(String column) { return table.getValue(index, column); }
+	/**
+	 * @param column Column of the value.
+	 * @return True if the value is null.
+	 */
+	public boolean isNull(String column) { return table.isNull(index, column); }
+	/**
+	 * @param column Integer column.
+	 * @return Value, or zero when null.
+	 */
+	public int getInt(String column) { return table.getInt(index, column); }
+	/**
+	 * @param column Integer column.
+	 * @return Value, or zero when null.
+	 */
+	public long getLong(String column) { return table.getLong(index, column); }
+	/**
+	 * @param column Numeric column.
+	 * @return Value, or zero when null.
+	 */
+	public double getDouble(String column) { return table.getDouble(index, column); }
+	/**
+	 * @param column Boolean column.
+	 * @return Value, or false when null.
+	 */
+	public boolean getBoolean(String column) { return table.getBoolean(index, column); }
+	
+	public boolean equals(Object other) {
+		return other instanceof ColumnarRow 
+			&& ((ColumnarRow) other).table == table 
+			&& ((ColumnarRow) other).index == index;
+	}
+	public int hashCode() { return System.identityHashCode(table) * 31 + index; }
+}
@@ -0,0 +1,85 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * The columnar table holds each column in a typed vector instead of holding
+ * rows.  Integers, floating point numbers, and booleans are stored unboxed
+ * with a null bitmap, and strings are dictionary encoded.  Rows are views 
+ * over the vectors.
+ * 
+ * Columnar tables are read only; they are filled for reading and scanning 
+ * large results, so they are lists of rows rather than tables that save.
+ * Getters throw IndexOutOfBoundsException for rows outside the table and
+ * IllegalArgumentException for unknown columns or columns of another type.
+ */
+public interface ColumnarTable extends List<ColumnarRow> {
+	/**
+	 * @return Name of the table the result came from, if any.
+	 */
+	String getTableName();
+	/**
+	 * @return Map of column names to column types.
+	 */
+	HashMap<String, String> getSchema();
+	/**
+	 * @return Index of the column names.
+	 */
+	ColumnIndex getColumnIndex();
+	
+	/**
+	 * @param row Index of the row.
+	 * @param column Column of the value.
+	 * @return Value boxed as getObject would return it.
+	 */
+	Object getValue(int row, String column);
+	/**
+	 * @param row Index of the row.
+	 * @param column Column of the value.
+	 * @return True if the value is null.
+	 */
+	boolean isNull(int row, String column);
+	/**
+	 * @param row Index of the row.
+	 * @param column Integer column.
+	 * @return Value, or zero when null.
+	 */
+	int getInt(int row, String column);
+	/**
+	 * @param row Index of the row.
+	 * @param column Integer column.
+	 * @return Value, or zero when null.
+	 */
+	long getLong(int row, String column);
+	/**
+	 * @param row Index of the row.
+	 * @param column Numeric column.
+	 * @return Value, or zero when null.
+	 */
+	double getDouble(int row, String column);
+	/**
+	 * @param row Index of the row.
+	 * @param column Boolean column.
+	 * @return Value, or false when null.
+	 */
+	boolean getBoolean(int row, String column);
+}
@@ -0,0 +1,38 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+/**
+ * The commit rule decides how a parallel saver commits its partitions, or a
+ * sharded connection its shards.
+ */
+public enum CommitRule {
+	/**
+	 * Each partition commits on its own; a failed partition does not undo
+	 * the others.
+	 */
+	PerPartition,
+	/**
+	 * Every partition prepares its transaction, then all are committed, or
+	 * all rolled back if any failed to prepare.  The server must allow
+	 * prepared transactions.  Commits that still fail after retrying throw a
+	 * PreparedTransactionException naming the transactions left prepared.
+	 */
+	TwoPhase
+}
@@ -18,6 +18,12 @@
 */
 package com.lagovistatech.database;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Stream;
+
 import com.lagovistatech.Factory;
 
 /**
@@ -76,6 +82,24 @@ public interface Connection {
 	 */
 	void setPassword(String password);
 
+	/**
+	 * @return Maximum number of statements sent to the server per batch.
+	 */
+	int getBatchSize();
+	/**
+	 * @param value Maximum number of statements sent to the server per batch.
+	 */
+	void setBatchSize(int value);
+
+	/**
+	 * @return Number of rows fetched per round trip when streaming.
+	 */
+	int getFetchSize();
+	/**
+	 * @param value Number of rows fetched per round trip when streaming.
+	 */
+	void setFetchSize(int value);
+
 	/**
 	 * @return Database specific adapter used for this connection.
 	 */
@@ -99,11 +123,11 @@ public interface Connection {
 	void close() throws Exception;
 	
 	/**
-	 * Executes the provided SQL query substituting parameters with values for
+	 * Executes the provided SQL query binding parameters as typed values for
 	 * queries that should not return a result set.
 	 * 
 	 * @param sql SQL query to execute.
-	 * @param params Parameter to be substituted with the literal values
+	 * @param params Parameters to be bound in place of their names
 	 * @return The number of rows modified
 	 * @throws Exception Error encountered.
 	 */
@@ -118,14 +142,14 @@ public interface Connection {
 	 */
 	long execute(String sql) throws Exception;
 	/**
-	 * Executes the provided SQL query substituting parameters with values for 
+	 * Executes the provided SQL query binding parameters as typed values for 
 	 * queries that should return results.  The results will be used to fill a
 	 * target table defined to take generic rows of type R.
 	 * 
 	 * @param <R> The type of the rows.
 	 * @param rowFactory Factory to create rows to populate the table.
 	 * @param sql SQL query to execute.
-	 * @param params Parameter to be substituted with the literal values
+	 * @param params Parameters to be bound in place of their names
 	 * @return The table that was filled.
 	 * @throws Exception Error encountered.
 	 */
@@ -142,9 +166,113 @@ public interface Connection {
 	 * @throws Exception Error encountered.
 	 */
 	<R extends Row> Table<R> fill(Factory<R> rowFactory, String sql) throws Exception;
+	/**
+	 * Executes the provided SQL query with the COPY protocol in binary format
+	 * and decodes the rows directly, which is faster than fill for large 
+	 * results.  Parameters are written into the query as literals.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param rowFactory Factory to create rows.
+	 * @param sql SQL query.
+	 * @param params Parameters to be replaced by literals.
+	 * @return The table that was filled.
+	 * @throws Exception Errors encountered, returned by server, columns of
+	 * types binary copy does not decode, or numeric NaN and infinities.
+	 */
+	<R extends Row> Table<R> fillBinary(Factory<R> rowFactory, String sql, Parameters params) throws Exception;
+	/**
+	 * Executes the provided SQL query with the COPY protocol in binary format
+	 * and decodes the rows directly.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param rowFactory Factory to create rows.
+	 * @param sql SQL query.
+	 * @return The table that was filled.
+	 * @throws Exception Errors encountered, returned by server, or columns of
+	 * types binary copy does not decode.
+	 */
+	<R extends Row> Table<R> fillBinary(Factory<R> rowFactory, String sql) throws Exception;
+	/**
+	 * Executes the provided SQL query and fills a read only columnar table,
+	 * which holds each column in a typed vector rather than a row per result.
+	 * 
+	 * @param sql SQL query to execute.
+	 * @param params Parameters to be bound in place of their names.
+	 * @return The table that was filled.
+	 * @throws Exception Error encountered.
+	 */
+	ColumnarTable fillColumnar(String sql, Parameters params) throws Exception;
+	/**
+	 * Executes the provided SQL query and fills a read only columnar table.
+	 * 
+	 * @param sql SQL query to execute.
+	 * @return The table that was filled.
+	 * @throws Exception Error encountered.
+	 */
+	ColumnarTable fillColumnar(String sql) throws Exception;
+	/**
+	 * Executes the provided SQL query binding parameters as typed values and 
+	 * streams the rows through a server side cursor, fetch size rows at a 
+	 * time, so memory use does not grow with the size of the result.  The rows
+	 * are not added to a table; each row's table only carries the schema.
+	 * 
+	 * If no transaction is in progress, one is started for the cursor and 
+	 * committed when the stream is closed, or rolled back if reading or 
+	 * handling a row failed.  The stream must be closed.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param rowFactory Factory to create rows.
+	 * @param sql SQL query to execute.
+	 * @param params Parameters to be bound in place of their names
+	 * @return Stream of the rows.
+	 * @throws Exception Error encountered.
+	 */
+	<R extends Row> Stream<R> stream(Factory<R> rowFactory, String sql, Parameters params) throws Exception;
+	/**
+	 * Executes the provided SQL query and streams the rows through a server 
+	 * side cursor, fetch size rows at a time.  The stream must be closed.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param rowFactory Factory to create rows.
+	 * @param sql SQL query to execute.
+	 * @return Stream of the rows.
+	 * @throws Exception Error encountered.
+	 */
+	<R extends Row> Stream<R> stream(Factory<R> rowFactory, String sql) throws Exception;
+	/**
+	 * Fills the rows of a table whose key column matches any of the keys,
+	 * using one query per chunk of keys rather than one per key.  The rows 
+	 * share one table.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param <K> The type of the keys, the Java type of the key column.
+	 * @param rowFactory Row factory used to generate rows.
+	 * @param tableName Table to select from.
+	 * @param keyColumn Column to match.
+	 * @param keys Keys to look up; duplicates and nulls are ignored.
+	 * @return Rows by key, in key order; keys without a row are left out.
+	 * @throws Exception Error encountered, or keys not of the key column's
+	 * Java type, such as Long keys for an integer column.
+	 */
+	<R extends Row, K> Map<K, R> fillByKeys(Factory<R> rowFactory, String tableName, String keyColumn, Collection<K> keys) throws Exception;
+	/**
+	 * Fills the rows of a versioned table by GUID.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param rowFactory Row factory used to generate rows.
+	 * @param tableName Table to select from.
+	 * @param guids GUIDs to look up.
+	 * @return Rows by GUID, in GUID order; GUIDs without a row are left out.
+	 * @throws Exception Error encountered.
+	 */
+	<R extends VersionedRow> Map<UUID, R> fillByGuids(Factory<R> rowFactory, String tableName, Collection<UUID> guids) throws Exception;
 	/**
 	 * Save the table's rows by either inserting, updating, or deleting the rows
-	 * from the database.
+	 * from the database.  The values the database returns for saved rows, such
+	 * as new versions, GUIDs, and defaults, are written back into the rows and
+	 * their changes accepted; deleted rows are removed from the table.  Rows 
+	 * that were not saved, such as version conflicts, keep their changes.  The
+	 * save is run in a transaction unless one is already in progress.
 	 * 
 	 * @param <R> The type of the rows.
 	 * @param table Table with rows to operate on.
@@ -152,6 +280,59 @@ public interface Connection {
 	 * @throws Exception Error encountered.
 	 */
 	<R extends Row> long save(Table<R> table) throws Exception;
+	/**
+	 * Save the table's rows with bound values, grouping statements of the same
+	 * shape into JDBC batches of at most batch size statements.  Statements are
+	 * sent shape by shape rather than in row order.  The save is run in a 
+	 * transaction unless one is already in progress.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param table Table with rows to operate on.
+	 * @return The number of rows modified for each row saved, in save order.
+	 * @throws Exception Error encountered.
+	 */
+	<R extends Row> Map<R, Long> saveBatch(Table<R> table) throws Exception;
+	/**
+	 * Bulk load the table's new rows with the COPY protocol.  Values such as
+	 * the GUID and version are generated the same way as save.  The load is 
+	 * run in a transaction unless one is already in progress.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param table Table with only new or unchanged rows.
+	 * @return The number of rows loaded.
+	 * @throws Exception Error encountered, or the table has changed or deleted
+	 * rows.
+	 */
+	<R extends Row> long load(Table<R> table) throws Exception;
+	/**
+	 * Saves the changed, existing rows of a versioned table with set based 
+	 * updates; rows modifying the same columns are sent together in one 
+	 * statement.  New and deleted rows are left for save.  Updated rows take 
+	 * their new version and have their changes accepted.  The update is run
+	 * in a transaction unless one is already in progress.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param table Table with rows to update.
+	 * @return GUIDs of the rows that were not updated because their version 
+	 * no longer matched the database.
+	 * @throws Exception Error encountered.
+	 */
+	<R extends VersionedRow> Set<UUID> update(Table<R> table) throws Exception;
+	/**
+	 * Saves the changed rows of a versioned table without knowing whether they
+	 * exist, inserting new GUIDs and updating existing ones as the rule allows.
+	 * Rows with the same columns are combined into multi-row statements.  Rows
+	 * without a GUID are given one.  Saved rows take their new version and have
+	 * their changes accepted; deleted rows are left for save.  The upsert is
+	 * run in a transaction unless one is already in progress.
+	 * 
+	 * @param <R> The type of the rows.
+	 * @param table Table with rows to upsert.
+	 * @param rule What to do with rows that already exist.
+	 * @return GUIDs of the rows the rule skipped.
+	 * @throws Exception Error encountered.
+	 */
+	<R extends VersionedRow> Set<UUID> upsert(Table<R> table, UpsertRule rule) throws Exception;
 	
 	/**
 	 * Starts a SQL transaction.
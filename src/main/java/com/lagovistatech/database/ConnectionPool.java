@@ -0,0 +1,176 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import com.lagovistatech.Factory;
+
+/**
+ * The connection pool keeps a bounded set of opened adapters ready for use.
+ * Connections created by the pool borrow an adapter when opened, and hand it
+ * back to the pool when closed instead of tearing down the network connection.
+ * The server, port, database, user, password, time out, and statement cache
+ * size are set on the pool; setting them on a pooled connection is ignored.
+ */
+public interface ConnectionPool extends Factory<Connection> {
+	/**
+	 * @return Server name/network address to connect to.
+	 */
+	String getServer();
+	/**
+	 * @param server Server name/network address to connect to.
+	 */
+	void setServer(String server);
+
+	/**
+	 * @return Alternate port to connect to.
+	 */
+	int getPort();
+	/**
+	 * @param port Alternate port to connect to.
+	 */
+	void setPort(int port);
+
+	/**
+	 * @return Database name to connect to.
+	 */
+	String getDatabase();
+	/**
+	 * @param database Database name to connect to.
+	 */
+	void setDatabase(String database);
+
+	/**
+	 * @return User name for authenticating connection.
+	 */
+	String getUser();
+	/**
+	 * @param user User name for authenticating connection.
+	 */
+	void setUser(String user);
+
+	/**
+	 * @return Timeout for connection and SQL queries.
+	 */
+	int getTimeOut();
+	/**
+	 * @param timeOut Timeout for connection and SQL queries.
+	 */
+	void setTimeOut(int timeOut);
+
+	/**
+	 * @param password Password used to authenticate connection.
+	 */
+	void setPassword(String password);
+
+	/**
+	 * @return Number of prepared statements each pooled adapter keeps for 
+	 * reuse.
+	 */
+	int getStatementCacheSize();
+	/**
+	 * @param value Number of prepared statements each pooled adapter keeps for
+	 * reuse.
+	 */
+	void setStatementCacheSize(int value);
+
+	/**
+	 * @return Number of adapters opened when the pool is opened and kept open
+	 * while idle.
+	 */
+	int getMinimumIdle();
+	/**
+	 * @param value Number of adapters opened when the pool is opened and kept
+	 * open while idle.
+	 */
+	void setMinimumIdle(int value);
+
+	/**
+	 * @return Maximum number of adapters, idle and active, the pool will hold.
+	 */
+	int getMaximumSize();
+	/**
+	 * @param value Maximum number of adapters, idle and active, the pool will
+	 * hold.
+	 */
+	void setMaximumSize(int value);
+
+	/**
+	 * @return Milliseconds a connection will wait for an adapter before timing
+	 * out.
+	 */
+	long getMaximumWait();
+	/**
+	 * @param value Milliseconds a connection will wait for an adapter before
+	 * timing out.
+	 */
+	void setMaximumWait(long value);
+
+	/**
+	 * @return Milliseconds an adapter may sit idle before it is closed.
+	 */
+	long getIdleTimeOut();
+	/**
+	 * @param value Milliseconds an adapter may sit idle before it is closed.
+	 */
+	void setIdleTimeOut(long value);
+
+	/**
+	 * Opens the minimum number of idle adapters and starts idle eviction.
+	 *
+	 * @throws Exception Errors encountered or returned by server.
+	 */
+	void open() throws Exception;
+	/**
+	 * Closes idle adapters; active adapters are closed as they are returned.
+	 *
+	 * @throws Exception Errors encountered.
+	 */
+	void close() throws Exception;
+
+	/**
+	 * @return A connection that borrows an adapter from the pool when opened
+	 * and returns it when closed.
+	 */
+	Connection create();
+
+	/**
+	 * @return Number of adapters currently borrowed by connections.
+	 */
+	int getActiveCount();
+	/**
+	 * @return Number of opened adapters waiting in the pool.
+	 */
+	int getIdleCount();
+	/**
+	 * @return Number of connections currently waiting for an adapter.
+	 */
+	int getWaitingCount();
+	/**
+	 * @return Number of adapters borrowed since the pool was created.
+	 */
+	long getBorrowCount();
+	/**
+	 * @return Number of borrows that timed out waiting for an adapter.
+	 */
+	long getTimeOutCount();
+	/**
+	 * @return Total milliseconds connections have spent waiting for adapters.
+	 */
+	long getTotalWaitTime();
+}
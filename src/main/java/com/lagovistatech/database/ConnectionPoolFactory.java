@@ -0,0 +1,44 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.internal.ConnectionPoolImp;
+import com.lagovistatech.database.internal.PostgresAdapter;
+
+/**
+ * Creates connection pools for the supported database types - currently
+ * PostgreSQL.
+ */
+public class ConnectionPoolFactory implements Factory<ConnectionPool> {
+	private ConnectionPoolFactory() {}
+	public static ConnectionPoolFactory instance = new ConnectionPoolFactory();
+	
+	/**
+	 * @return A pool of PostgreSQL based connections.
+	 */
+	public static ConnectionPool instanciate() { return instance.create(); }
+	
+	/**
+	 * @return A pool of PostgreSQL based connections.
+	 */
+	public ConnectionPool create() {
+		return new ConnectionPoolImp(() -> new PostgresAdapter());
+	}
+}
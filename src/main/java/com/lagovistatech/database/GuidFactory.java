@@ -0,0 +1,58 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import java.util.UUID;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.Guid;
+import com.lagovistatech.database.internal.TimeOrderedGuidFactory;
+
+/**
+ * Creates the GUIDs given to new versioned rows when they are saved.  Random
+ * GUIDs are the default; time ordered GUIDs keep inserts at the end of the
+ * GUID index instead of scattering them across it.
+ */
+public class GuidFactory {
+	private GuidFactory() {}
+
+	/**
+	 * Random (version 4) GUIDs.
+	 */
+	public static final Factory<UUID> random = () -> Guid.computeUuid();
+	/**
+	 * Time ordered (version 7) GUIDs.
+	 */
+	public static final Factory<UUID> timeOrdered = new TimeOrderedGuidFactory();
+
+	private static volatile Factory<UUID> instance = random;
+	/**
+	 * @return Factory used for new versioned rows.
+	 */
+	public static Factory<UUID> getInstance() { return instance; }
+	/**
+	 * @param value Factory used for new versioned rows.
+	 */
+	public static void setInstance(Factory<UUID> value) { instance = value; }
+
+	/**
+	 * @return A GUID from the factory used for new versioned rows.
+	 */
+	public static UUID instanciate() { return instance.create(); }
+}
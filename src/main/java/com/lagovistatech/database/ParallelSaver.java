@@ -0,0 +1,77 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+/**
+ * The parallel saver splits a versioned table's dirty rows into partitions
+ * and saves each partition on its own connection at the same time, so a
+ * large save is spread across several server backends.
+ */
+public interface ParallelSaver {
+	/**
+	 * @return Most connections used at once, and so most partitions.
+	 */
+	int getPartitionCount();
+	/**
+	 * @param value Most connections used at once, and so most partitions.
+	 */
+	void setPartitionCount(int value);
+
+	/**
+	 * @return Smallest number of rows worth a partition of its own.
+	 */
+	int getMinimumPartitionSize();
+	/**
+	 * @param value Smallest number of rows worth a partition of its own.
+	 */
+	void setMinimumPartitionSize(int value);
+
+	/**
+	 * @return How the dirty rows are split into partitions.
+	 */
+	PartitionRule getPartitionRule();
+	/**
+	 * @param value How the dirty rows are split into partitions.
+	 */
+	void setPartitionRule(PartitionRule value);
+
+	/**
+	 * @return How the partitions are committed.
+	 */
+	CommitRule getCommitRule();
+	/**
+	 * @param value How the partitions are committed.
+	 */
+	void setCommitRule(CommitRule value);
+
+	/**
+	 * Saves the table's dirty rows as connection save does, giving new rows a
+	 * GUID first so they can be partitioned.  Rows of committed partitions
+	 * take the values the database returned, and deleted rows are removed
+	 * from the table.
+	 *
+	 * @param <R> The type of the rows.
+	 * @param table Table with the rows to save.
+	 * @return Number of rows modified in the database.
+	 * @throws Exception Errors encountered or returned by server; the first
+	 * failed partition's error, or a PreparedTransactionException when two
+	 * phase commits were left prepared.
+	 */
+	<R extends Row> long save(Table<R> table) throws Exception;
+}
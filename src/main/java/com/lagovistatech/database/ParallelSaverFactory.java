@@ -0,0 +1,38 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.internal.ParallelSaverImp;
+
+/**
+ * Creates parallel savers for versioned tables.
+ */
+public class ParallelSaverFactory {
+	private ParallelSaverFactory() {}
+
+	/**
+	 * @param connections Creates configured connections, such as a connection
+	 * pool; each partition opens and closes one.
+	 * @return A parallel saver.
+	 */
+	public static ParallelSaver instanciate(Factory<Connection> connections) {
+		return new ParallelSaverImp(connections);
+	}
+}
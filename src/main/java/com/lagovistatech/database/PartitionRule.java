@@ -0,0 +1,35 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+/**
+ * The partition rule decides how a parallel saver splits a table's dirty
+ * rows between its connections.  Either way each partition saves its rows in
+ * GUID order, so concurrent saves lock rows in the same order.
+ */
+public enum PartitionRule {
+	/**
+	 * By the hash code of the GUID, spreading rows evenly.
+	 */
+	Hash,
+	/**
+	 * Into contiguous ranges of GUIDs, so partitions never interleave.
+	 */
+	Range
+}
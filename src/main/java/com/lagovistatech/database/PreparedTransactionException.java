@@ -0,0 +1,41 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import java.util.List;
+
+/**
+ * Thrown when prepared transactions could not be committed.  They stay on
+ * the server holding their locks until they are committed with
+ * COMMIT PREPARED 'id', or rolled back with ROLLBACK PREPARED 'id', from any
+ * session; SELECT gid FROM pg_prepared_xacts lists those still waiting.
+ */
+public class PreparedTransactionException extends Exception {
+	private static final long serialVersionUID = 1L;
+	public PreparedTransactionException(String message, List<String> transactionIds, Throwable cause) {
+		super(message + " " + String.join(", ", transactionIds), cause);
+		this.transactionIds = List.copyOf(transactionIds);
+	}
+
+	private List<String> transactionIds;
+	/**
+	 * @return Ids of the transactions left prepared.
+	 */
+	public List<String> getTransactionIds() { return transactionIds; }
+}
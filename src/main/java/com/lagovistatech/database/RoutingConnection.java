@@ -0,0 +1,78 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+/**
+ * The routing connection sends reads made outside of a transaction to read
+ * replicas, and everything else - executes, saves, loads, and any statement
+ * between begin and commit or rollback - to the primary.  The server and port
+ * are those of the primary; replicas share its database, user, password, and
+ * time out.  Streams run in a transaction, so they read from the primary.
+ * After a write, reads wait for a replica that has replayed it.
+ */
+public interface RoutingConnection extends Connection {
+	/**
+	 * Adds a replica; replicas are opened and closed with the connection.
+	 *
+	 * @param server Server name/network address of the replica.
+	 * @param port Port of the replica.
+	 */
+	void addReplica(String server, int port);
+	/**
+	 * @return Number of replicas added.
+	 */
+	int getReplicaCount();
+
+	/**
+	 * @return How a replica is chosen for each read.
+	 */
+	ReplicaSelection getReplicaSelection();
+	/**
+	 * @param value How a replica is chosen for each read.
+	 */
+	void setReplicaSelection(ReplicaSelection value);
+
+	/**
+	 * @return Milliseconds a read waits for a replica to replay the 
+	 * consistency token before reading from the primary instead.
+	 */
+	long getMaximumReplicaWait();
+	/**
+	 * @param value Milliseconds a read waits for a replica to replay the
+	 * consistency token before reading from the primary instead.
+	 */
+	void setMaximumReplicaWait(long value);
+
+	/**
+	 * Reads only go to replicas that have replayed the primary's write ahead
+	 * log up to the consistency token, so a session reads its own writes.  The
+	 * token is the primary's log position after this connection's last write
+	 * or commit, captured when next needed.
+	 *
+	 * @return Log position such as 0/16B3748, or null before any write.
+	 * @throws Exception Errors encountered or returned by server.
+	 */
+	String getConsistencyToken() throws Exception;
+	/**
+	 * @param value Log position from another connection's consistency token,
+	 * so this connection reads that connection's writes; null to read from any
+	 * replica.
+	 */
+	void setConsistencyToken(String value);
+}
@@ -0,0 +1,45 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.internal.PostgresAdapter;
+import com.lagovistatech.database.internal.RoutingAdapter;
+import com.lagovistatech.database.internal.RoutingConnectionImp;
+
+/**
+ * Creates connections routing reads to replicas for the supported database
+ * types - currently PostgreSQL.
+ */
+public class RoutingConnectionFactory implements Factory<RoutingConnection> {
+	private RoutingConnectionFactory() {}
+	public static RoutingConnectionFactory instance = new RoutingConnectionFactory();
+
+	/**
+	 * @return A PostgreSQL based routing connection.
+	 */
+	public static RoutingConnection instanciate() { return instance.create(); }
+
+	/**
+	 * @return A PostgreSQL based routing connection.
+	 */
+	public RoutingConnection create() {
+		return new RoutingConnectionImp(new RoutingAdapter(() -> new PostgresAdapter()));
+	}
+}
@@ -62,6 +62,24 @@ public interface Row {
 	 * @throws Exception
 	 */
 	void copyFrom(ResultSet rs) throws Exception;
+	/**
+	 * This allows the row to be loaded from values read outside of a result 
+	 * set.  When the columns are those of the table's column index, the row 
+	 * may keep the values array as its storage.
+	 * @param columns Names of the columns.
+	 * @param values Values in column order.
+	 * @throws Exception
+	 */
+	void copyFrom(String[] columns, Object[] values) throws Exception;
+	/**
+	 * Accepts the row's changes as saved, taking the values the database 
+	 * returned for the row, such as versions and defaults.  Columns not 
+	 * returned keep their values.
+	 * @param columns Names of the returned columns.
+	 * @param values Returned values in column order.
+	 * @throws Exception
+	 */
+	void acceptChanges(String[] columns, Object[] values) throws Exception;
 	/**
 	 * Provided a database specific adapter, this will return an SQL query to 
 	 * update the rows in the database.
@@ -71,4 +89,13 @@ public interface Row {
 	 * @throws Exception
 	 */
 	String generateSave(Adapter adapter) throws Exception;
+	/**
+	 * Provided a database specific adapter, this will return a statement with
+	 * bound values to update the row in the database.
+	 * 
+	 * @param adapter Database specific adapter.
+	 * @return Statement to insert, update, or delete; or null if unchanged.
+	 * @throws Exception
+	 */
+	SaveCommand generateSaveCommand(Adapter adapter) throws Exception;
 }
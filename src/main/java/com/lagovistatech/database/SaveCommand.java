@@ -0,0 +1,115 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A save command is a single insert, update, or delete statement for a row.
+ * The statement is held as SQL fragments surrounding the values, so it can 
+ * be sent as a prepared statement with bound values or rendered as literal SQL.
+ */
+public class SaveCommand {
+	/**
+	 * The type of statement.
+	 */
+	public enum Kind {
+		Insert,
+		Update,
+		Delete
+	}
+	
+	/**
+	 * @param kind Type of statement.
+	 * @param fragments SQL before, between, and after the values; one more 
+	 * fragment than values.
+	 * @param values Values of the statement.
+	 */
+	public SaveCommand(Kind kind, List<String> fragments, List<Object> values) {
+		if(fragments.size() != values.size() + 1)
+			throw new IllegalArgumentException("There must be one more fragment than values!");
+
+		this.kind = kind;
+		this.fragments = fragments;
+		this.values = values;
+	}
+	
+	private Kind kind;
+	/**
+	 * @return Type of statement.
+	 */
+	public Kind getKind() { return kind; }
+	
+	private List<String> fragments;
+	/**
+	 * @return SQL before, between, and after the values.
+	 */
+	public List<String> getFragments() { return fragments; }
+	
+	private List<Object> values;
+	/**
+	 * @return Values of the statement.
+	 */
+	public List<Object> getValues() { return values; }
+	
+	private List<String> columns = new ArrayList<String>();
+	/**
+	 * @return Columns an insert fills, in value order; empty for other 
+	 * statements.
+	 */
+	public List<String> getColumns() { return columns; }
+	
+	private List<Row> rows = new ArrayList<Row>();
+	/**
+	 * @return First row the statement saves.
+	 */
+	public Row getRow() { return rows.isEmpty() ? null : rows.get(0); }
+	/**
+	 * @param value Row the statement saves.
+	 */
+	public void setRow(Row value) {
+		rows.clear();
+		rows.add(value);
+	}
+	/**
+	 * @return Rows the statement saves, in value order for combined inserts.
+	 */
+	public List<Row> getRows() { return rows; }
+	
+	/**
+	 * @return SQL with a JDBC placeholder for each value.  Commands with the 
+	 * same SQL can be batched together.
+	 */
+	public String getSql() { return String.join("?", fragments); }
+	
+	/**
+	 * @param adapter Adapter to convert values to literals.
+	 * @return SQL with each value converted to a literal.
+	 * @throws Exception Values that could not be converted.
+	 */
+	public String toLiteralSql(Adapter adapter) throws Exception {
+		StringBuilder ret = new StringBuilder(fragments.get(0));
+		for(int cnt = 0; cnt < values.size(); cnt++) {
+			ret.append(adapter.objectToSql(values.get(cnt)));
+			ret.append(fragments.get(cnt + 1));
+		}
+		return ret.toString();
+	}
+}
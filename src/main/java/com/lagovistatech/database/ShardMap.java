@@ -0,0 +1,41 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import java.util.UUID;
+
+/**
+ * The shard map decides which shard of a sharded connection holds the row
+ * with a given GUID.  A row must always map to the same shard for the same
+ * number of shards, so adding shards requires moving rows.
+ */
+@FunctionalInterface
+public interface ShardMap {
+	/**
+	 * Spreads GUIDs evenly across the shards by their hash code.
+	 */
+	static final ShardMap hash = (guid, shardCount) -> Math.floorMod(guid.hashCode(), shardCount);
+
+	/**
+	 * @param guid GUID of the row.
+	 * @param shardCount Number of shards.
+	 * @return Index of the shard holding the row, from 0 to shard count - 1.
+	 */
+	int shardOf(UUID guid, int shardCount);
+}
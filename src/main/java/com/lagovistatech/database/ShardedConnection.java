@@ -0,0 +1,77 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+/**
+ * The sharded connection spreads versioned rows across several servers by
+ * GUID.  Saves, loads, updates, and upserts split the table's dirty rows per
+ * shard and run the shards concurrently, each in its own transaction unless
+ * begin was called.  By default each shard commits on its own, so a commit
+ * is not atomic and a failure on one shard does not undo the others; the two
+ * phase commit rule prepares every shard's transaction before committing
+ * any.  Fills, fills by key, and executes run on every shard, and fills
+ * merge the results into one table in shard order, so sorting applies within
+ * each shard only.  Executes are meant for DDL and other statements every
+ * shard must run; an insert would add its rows to every shard, so rows are
+ * added by saving a table instead, or by executing on a single shard.  The
+ * database, user, password, time out, batch size, and fetch size are shared
+ * by all shards; the server and port are per shard.  The server, port, and
+ * adapter of the connection itself are those of the first shard, which is
+ * added when first set, so a sharded connection configured as a plain
+ * connection has a single shard.
+ */
+public interface ShardedConnection extends Connection {
+	/**
+	 * Adds a shard; shards are opened and closed with the connection.  Rows
+	 * are mapped to shards by the order they were added.
+	 *
+	 * @param server Server name/network address of the shard.
+	 * @param port Port of the shard.
+	 */
+	void addShard(String server, int port);
+	/**
+	 * @return Number of shards added.
+	 */
+	int getShardCount();
+	/**
+	 * @param index Index of the shard, in the order added.
+	 * @return Connection to the shard alone, such as for creating tables.
+	 */
+	Connection getShard(int index);
+
+	/**
+	 * @return Map from row GUIDs to shards.
+	 */
+	ShardMap getShardMap();
+	/**
+	 * @param value Map from row GUIDs to shards; defaults to hash.
+	 */
+	void setShardMap(ShardMap value);
+
+	/**
+	 * @return How the shards commit saves and transactions.
+	 */
+	CommitRule getCommitRule();
+	/**
+	 * @param value How the shards commit saves and transactions; defaults to
+	 * per partition, committing each shard on its own.  Two phase requires
+	 * the shards to allow prepared transactions.
+	 */
+	void setCommitRule(CommitRule value);
+}
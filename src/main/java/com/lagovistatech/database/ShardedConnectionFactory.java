@@ -0,0 +1,44 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.internal.PostgresAdapter;
+import com.lagovistatech.database.internal.ShardedConnectionImp;
+
+/**
+ * Creates connections sharding versioned rows across several servers for the
+ * supported database types - currently PostgreSQL.
+ */
+public class ShardedConnectionFactory implements Factory<ShardedConnection> {
+	private ShardedConnectionFactory() {}
+	public static ShardedConnectionFactory instance = new ShardedConnectionFactory();
+
+	/**
+	 * @return A PostgreSQL based sharded connection.
+	 */
+	public static ShardedConnection instanciate() { return instance.create(); }
+
+	/**
+	 * @return A PostgreSQL based sharded connection.
+	 */
+	public ShardedConnection create() {
+		return new ShardedConnectionImp(() -> new PostgresAdapter());
+	}
+}
@@ -19,7 +19,11 @@
 package com.lagovistatech.database;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
 
 import com.lagovistatech.database.internal.AbstractRow;
 
@@ -29,28 +33,109 @@ import com.lagovistatech.database.internal.AbstractRow;
  * primary key, nor a version number requirement.
  */
 public class StatefulRow extends AbstractRow implements Row {
+	/**
+	 * Marks slots without an original or changed value.
+	 */
+	private static final Object MISSING = new Object();
+	
+	/**
+	 * Creates a row without values.
+	 */
+	public StatefulRow() {}
 	/**
 	 * Creates a rows initialized with the provided original and changed values.
+	 * The maps are kept in step with the row's values as they change, which
+	 * costs a map update on every change; values put in the maps afterwards
+	 * are not seen by the row.  Use copyOf when the maps need not be kept.
 	 * 
 	 * @param originals Map of columns to original values.
 	 * @param changes Map of columns to changed values.
 	 */
 	public StatefulRow(HashMap<String, Object> originals, HashMap<String, Object> changes) {
+		load(originals, changes);
 		originalsMap = originals;
 		changesMap = changes;
 	}
-
+	/**
+	 * @param originals Map of columns to original values.
+	 * @param changes Map of columns to changed values.
+	 * @return Row initialized with copies of the values.
+	 */
+	public static StatefulRow copyOf(Map<String, Object> originals, Map<String, Object> changes) {
+		StatefulRow ret = new StatefulRow();
+		ret.load(originals, changes);
+		return ret;
+	}
+	private void load(Map<String, Object> originals, Map<String, Object> changes) {
+		for(String column : originals.keySet()) {
+			int slot = slotOf(column);
+			originalsSlots[slot] = originals.get(column);
+		}
+		for(String column : changes.keySet()) {
+			int slot = slotOf(column);
+			changeSlots()[slot] = changes.get(column);
+		}
+	}
+	
+	/**
+	 * Maps the row was created with, kept in step with the slots; null for
+	 * rows not created from maps.
+	 */
 	private HashMap<String, Object> originalsMap;
 	private HashMap<String, Object> changesMap;
+	private void mirror() {
+		if(originalsMap == null)
+			return;
+		
+		originalsMap.clear();
+		originalsMap.putAll(getOriginals());
+		changesMap.clear();
+		changesMap.putAll(getChanges());
+	}
+
+	private ColumnIndex index = ColumnIndex.EMPTY;
+	private Object[] originalsSlots = new Object[0];
+	/**
+	 * Allocated by the first change.
+	 */
+	private Object[] changesSlots;
+	
+	private int slotOf(String column) {
+		int ret = index.slotOf(column);
+		if(ret >= 0)
+			return ret;
+		
+		index = index.with(column);
+		originalsSlots = grow(originalsSlots);
+		if(changesSlots != null)
+			changesSlots = grow(changesSlots);
+		return index.size() - 1;
+	}
+	private Object[] grow(Object[] slots) {
+		Object[] ret = Arrays.copyOf(slots, index.size());
+		Arrays.fill(ret, slots.length, ret.length, MISSING);
+		return ret;
+	}
+	private Object[] changeSlots() {
+		if(changesSlots == null) {
+			changesSlots = new Object[index.size()];
+			Arrays.fill(changesSlots, MISSING);
+		}
+		return changesSlots;
+	}
+	
 	/**
 	 * @param column Column of the value to fetch.
 	 * @return Value of the specified column.
 	 */
 	public Object get(String column) {
-		if(changesMap.containsKey(column))
-			return changesMap.get(column);
-		else if (originalsMap.containsKey(column))
-			return originalsMap.get(column);
+		int slot = index.slotOf(column);
+		if(slot < 0)
+			return null;
+		if(changesSlots != null && changesSlots[slot] != MISSING)
+			return changesSlots[slot];
+		else if (originalsSlots[slot] != MISSING)
+			return originalsSlots[slot];
 		else
 			return null;
 	}
@@ -59,16 +144,46 @@ public class StatefulRow extends AbstractRow implements Row {
 	 * @param value Value to set.
 	 */
 	public void set(String column, Object value) {
-		boolean isInOrig = originalsMap.containsKey(column);
-		boolean isEqOrig = isInOrig && originalsMap.get(column).equals(value);
-		boolean isInChg = changesMap.containsKey(column);
+		int slot = slotOf(column);
+		Object original = originalsSlots[slot];
+		
+		boolean isInOrig = original != MISSING;
+		boolean isEqOrig = isInOrig && Objects.equals(original, value);
+		boolean isInChg = changesSlots != null && changesSlots[slot] != MISSING;
 
 		if(isInChg && isEqOrig)
-			changesMap.remove(column);
+			changesSlots[slot] = MISSING;
 		else if(isInChg && !isInOrig && value == null)
-			changesMap.remove(column);
+			changesSlots[slot] = MISSING;
 		else
-			changesMap.put(column, value);
+			changeSlots()[slot] = value;
+		
+		mirror();
+		markDirty();
+	}
+	
+	protected boolean getIsChanged() {
+		if(changesSlots != null)
+			for(Object value : changesSlots)
+				if(value != MISSING)
+					return true;
+		return false;
+	}
+	
+	/**
+	 * @return Copy of the columns and values the row was loaded with.
+	 */
+	public Map<String, Object> getOriginals() { return toMap(originalsSlots); }
+	/**
+	 * @return Copy of the columns and values changed since the row was loaded.
+	 */
+	public Map<String, Object> getChanges() { return changesSlots == null ? new HashMap<String, Object>() : toMap(changesSlots); }
+	private Map<String, Object> toMap(Object[] slots) {
+		HashMap<String, Object> ret = new HashMap<String, Object>();
+		for(int cnt = 0; cnt < slots.length; cnt++)
+			if(slots[cnt] != MISSING)
+				ret.put(index.getColumns()[cnt], slots[cnt]);
+		return ret;
 	}
 	
 	/**
@@ -77,8 +192,54 @@ public class StatefulRow extends AbstractRow implements Row {
 	 * @throws Exception
 	 */
 	public void copyFrom(ResultSet source) throws Exception {
-		for(int cnt = 1; cnt <= source.getMetaData().getColumnCount(); cnt++)
-			originalsMap.put(source.getMetaData().getColumnLabel(cnt), source.getObject(cnt));
+		ResultSetMetaData meta = source.getMetaData();
+		for(int cnt = 1; cnt <= meta.getColumnCount(); cnt++) {
+			int slot = slotOf(meta.getColumnLabel(cnt));
+			originalsSlots[slot] = source.getObject(cnt);
+		}
+		mirror();
+	}
+	/**
+	 * This allows the row to be loaded from values read outside of a result 
+	 * set.
+	 * @param columns Names of the columns.
+	 * @param values Values in column order.
+	 * @throws Exception
+	 */
+	public void copyFrom(String[] columns, Object[] values) throws Exception {
+		ColumnIndex shared = getTableIndex(columns);
+		if(shared != null && index.size() == 0) {
+			index = shared;
+			originalsSlots = values;
+		}
+		else {
+			for(int cnt = 0; cnt < columns.length; cnt++) {
+				int slot = slotOf(columns[cnt]);
+				originalsSlots[slot] = values[cnt];
+			}
+		}
+		mirror();
+	}
+	/**
+	 * Moves the changes into the originals, then takes the returned values as
+	 * originals.
+	 * @param columns Names of the returned columns.
+	 * @param values Returned values in column order.
+	 * @throws Exception
+	 */
+	public void acceptChanges(String[] columns, Object[] values) throws Exception {
+		if(changesSlots != null)
+			for(int slot = 0; slot < changesSlots.length; slot++)
+				if(changesSlots[slot] != MISSING)
+					originalsSlots[slot] = changesSlots[slot];
+		changesSlots = null;
+		
+		for(int cnt = 0; cnt < columns.length; cnt++) {
+			int slot = slotOf(columns[cnt]);
+			originalsSlots[slot] = values[cnt];
+		}
+		mirror();
+		markClean();
 	}
 	/**
 	 * Provided a database specific adapter, this will return an SQL query to 
@@ -89,6 +250,20 @@ public class StatefulRow extends AbstractRow implements Row {
 	 * @throws Exception
 	 */
 	public String generateSave(Adapter adapter) throws Exception {
-		return adapter.generateSave(getTable(), originalsMap, changesMap, getIsDeleted());
+		return adapter.generateSave(getTable(), getOriginals(), getChanges(), getIsDeleted());
+	}
+	/**
+	 * Provided a database specific adapter, this will return a statement with
+	 * bound values to update the row in the database.
+	 * 
+	 * @param adapter Database specific adapter.
+	 * @return Statement to insert, update, or delete; or null if unchanged.
+	 * @throws Exception
+	 */
+	public SaveCommand generateSaveCommand(Adapter adapter) throws Exception {
+		SaveCommand ret = adapter.generateSaveCommand(getTable(), getOriginals(), getChanges(), getIsDeleted());
+		if(ret != null)
+			ret.setRow(this);
+		return ret;
 	}
 }
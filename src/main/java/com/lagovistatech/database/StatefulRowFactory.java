@@ -18,8 +18,6 @@
 */
 package com.lagovistatech.database;
 
-import java.util.HashMap;
-
 import com.lagovistatech.Factory;
 
 /**
@@ -42,6 +40,6 @@ public class StatefulRowFactory implements Factory<StatefulRow> {
 	 * @return New row.
 	 */
 	public StatefulRow create() {
-		return new StatefulRow(new HashMap<String, Object>(), new HashMap<String, Object>());
+		return new StatefulRow();
 	}
 }
@@ -48,6 +48,50 @@ public interface Table<R extends Row> extends List<R> {
 	 */
 	void setSchema(HashMap<String, String> value);
 	
+	/**
+	 * @return Column to slot index shared by rows loaded into the table.
+	 */
+	ColumnIndex getColumnIndex();
+	/**
+	 * @param value Column to slot index shared by rows loaded into the table.
+	 */
+	void setColumnIndex(ColumnIndex value);
+	
+	/**
+	 * @param capacity Number of rows to allocate room for.
+	 */
+	void ensureCapacity(int capacity);
+	
+	/**
+	 * @return True if rows are indexed by identity, so contains, indexOf, and
+	 * remove of a row do not scan the table.
+	 */
+	boolean getIsIdentityIndexed();
+	/**
+	 * @param value True to index rows by identity, so contains, indexOf, and
+	 * remove of a row do not scan the table.
+	 */
+	void setIsIdentityIndexed(boolean value);
+	
+	/**
+	 * Called by rows when they are changed or marked for deletion, so saving
+	 * only visits those rows.
+	 * 
+	 * @param row Row of this table that changed.
+	 */
+	void markDirty(Row row);
+	/**
+	 * @return Rows that were changed, marked for deletion, or added from 
+	 * another table, in the order they were first marked.
+	 */
+	List<R> getDirtyRows();
+	/**
+	 * Called by rows when their changes have been saved.
+	 * 
+	 * @param row Row of this table that was saved.
+	 */
+	void markClean(Row row);
+	
 	/**
 	 * @return New row that included in the tables row set.
 	 * @throws Exception 
@@ -55,12 +99,21 @@ public interface Table<R extends Row> extends List<R> {
 	R createRow() throws Exception;
 	
 	/**
-	 * For each row in the table, this will create a series of SQL statements to
-	 * save those rows.
+	 * For each dirty row in the table, this will create a series of SQL 
+	 * statements to save those rows.
 	 * 
 	 * @param adapter Database adapter for the connections database type.
 	 * @return SQL queries to save the rows.
 	 * @throws Exception
 	 */
 	String generateSave(Adapter adapter) throws Exception;
+	/**
+	 * For each dirty row in the table, this will create a statement with bound
+	 * values to save the row.  Rows without changes are skipped.
+	 * 
+	 * @param adapter Database adapter for the connections database type.
+	 * @return Statements to save the rows.
+	 * @throws Exception
+	 */
+	List<SaveCommand> generateSaveCommands(Adapter adapter) throws Exception;
 }
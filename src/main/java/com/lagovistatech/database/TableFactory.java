@@ -18,9 +18,8 @@
 */
 package com.lagovistatech.database;
 
-import java.util.LinkedList;
-
 import com.lagovistatech.Factory;
+import com.lagovistatech.database.internal.ChunkedList;
 import com.lagovistatech.database.internal.TableImp;
 
 /**
@@ -37,7 +36,7 @@ public class TableFactory<R extends Row> implements Factory<Table<R>> {
 	 * @return Table
 	 */
 	public static <R extends Row> Table<R> instanciate(Factory<R> rowFactory) {
-		return new TableImp<R>(rowFactory, new LinkedList<R>()); 
+		return new TableImp<R>(rowFactory, new ChunkedList<R>()); 
 	}
 
 	/**
@@ -54,6 +53,6 @@ public class TableFactory<R extends Row> implements Factory<Table<R>> {
 	 * @return Table that contains rows of R type.
 	 */
 	public Table<R> create() {
-		return new TableImp<R>(rowFactory, new LinkedList<R>());
+		return new TableImp<R>(rowFactory, new ChunkedList<R>());
 	}
 }
@@ -0,0 +1,40 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+/**
+ * The upsert rule decides what happens when a row being upserted already
+ * exists in the database with the same GUID.  Rows are always inserted with
+ * their version plus one.
+ */
+public enum UpsertRule {
+	/**
+	 * Update the existing row only when its version is the version the row
+	 * was read at, the same concurrency check as saving.
+	 */
+	Versioned,
+	/**
+	 * Update the existing row regardless of its version, incrementing it.
+	 */
+	Overwrite,
+	/**
+	 * Leave the existing row as it is.
+	 */
+	Ignore
+}
@@ -19,7 +19,14 @@
 package com.lagovistatech.database;
 
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
 import java.util.UUID;
 
 import com.lagovistatech.database.internal.AbstractRow;
@@ -50,32 +57,105 @@ public class VersionedRow extends AbstractRow implements Row, Versioned {
 	public final static String COLUMN_VERSION = "Version";
 	
 	/**
-	 * Creates a versioned row with the provided column to values map.
+	 * Creates a versioned row without values.
+	 */
+	public VersionedRow() {}
+	/**
+	 * Creates a versioned row with the provided column to values map.  The map
+	 * is kept in step with the row's values as they change, which costs a map
+	 * update on every change; values put in the map afterwards are not seen by
+	 * the row.  Use copyOf when the map need not be kept.
 	 * 
 	 * @param values The map of columns to values.
 	 */
 	public VersionedRow(HashMap<String, Object> values) {
-		this.values = values;
+		for(String column : values.keySet())
+			put(column, values.get(column));
+		valuesMap = values;
+	}
+	/**
+	 * @param values The map of columns to values.
+	 * @return Row initialized with copies of the values.
+	 */
+	public static VersionedRow copyOf(Map<String, Object> values) {
+		VersionedRow ret = new VersionedRow();
+		for(String column : values.keySet())
+			ret.put(column, values.get(column));
+		return ret;
 	}
 	
-	private HashMap<String, Object> values = new HashMap<String, Object>();
+	/**
+	 * Map the row was created with, kept in step with the slots; null for rows
+	 * not created from a map.
+	 */
+	private HashMap<String, Object> valuesMap;
+	
+	private ColumnIndex index = ColumnIndex.EMPTY;
+	private Object[] values = new Object[0];
 	/**
 	 * @param column Column of the value to fetch.
 	 * @return Value of the specified column.
 	 */
 	public Object get(String column) {
-		if(values.containsKey(column))
-			return values.get(column);
-		else
-			return null;
+		int slot = index.slotOf(column);
+		return slot < 0 ? null : values[slot];
+	}
+	public void set(String column, Object value) { 
+		if(Objects.equals(get(column), value) && index.slotOf(column) >= 0)
+			return;
+		
+		put(column, value);
+		if(modified == null)
+			modified = new BitSet(index.size());
+		modified.set(index.slotOf(column));
+		markDirty();
+	}
+	
+	/**
+	 * Slots set since the row was loaded; allocated by the first change.
+	 */
+	private BitSet modified;
+	protected boolean getIsChanged() { return modified != null && !modified.isEmpty(); }
+	/**
+	 * @return Columns set to a different value since the row was loaded.
+	 */
+	public Set<String> getModified() {
+		HashSet<String> ret = new HashSet<String>();
+		if(modified != null)
+			for(int slot = modified.nextSetBit(0); slot >= 0; slot = modified.nextSetBit(slot + 1))
+				ret.add(index.getColumns()[slot]);
+		return ret;
+	}
+	/**
+	 * Sets a value without marking the row dirty, for loading and for values
+	 * filled in when saving.
+	 */
+	private void put(String column, Object value) {
+		int slot = index.slotOf(column);
+		if(slot < 0) {
+			index = index.with(column);
+			slot = index.size() - 1;
+			values = Arrays.copyOf(values, index.size());
+		}
+		values[slot] = value; 
+		if(valuesMap != null)
+			valuesMap.put(column, value);
+	}
+	/**
+	 * @return Copy of the columns and values of the row.
+	 */
+	public Map<String, Object> getValues() {
+		HashMap<String, Object> ret = new HashMap<String, Object>();
+		for(int cnt = 0; cnt < values.length; cnt++)
+			ret.put(index.getColumns()[cnt], values[cnt]);
+		return ret;
 	}
-	public void set(String column, Object value) { values.put(column, value); }
 
 	/**
 	 * @return The concurrency version number.
 	 */
 	public Long getVersion() {
-		if(values.containsKey(COLUMN_VERSION))
+		if(index.slotOf(COLUMN_VERSION) >= 0)
 			return (long) get(COLUMN_VERSION);
 		else
 			return (long) 0;
@@ -86,7 +166,7 @@ public class VersionedRow extends AbstractRow implements Row, Versioned {
 	 * @return The GUID identifying the row.
 	 */
 	public UUID getGuid() {
-		if(values.containsKey(COLUMN_GUID))
+		if(index.slotOf(COLUMN_GUID) >= 0)
 			return (UUID) get(COLUMN_GUID);
 		else
 			return null;
@@ -99,10 +179,59 @@ public class VersionedRow extends AbstractRow implements Row, Versioned {
 	 * @throws Exception
 	 */
 	public void copyFrom(ResultSet source) throws Exception {
-		for(int cnt = 1; cnt <= source.getMetaData().getColumnCount(); cnt++)
-			set(source.getMetaData().getColumnLabel(cnt), source.getObject(cnt));
+		ResultSetMetaData meta = source.getMetaData();
+		for(int cnt = 1; cnt <= meta.getColumnCount(); cnt++)
+			put(meta.getColumnLabel(cnt), source.getObject(cnt));
+	}
+	public void copyFrom(String[] columns, Object[] values) throws Exception {
+		ColumnIndex shared = getTableIndex(columns);
+		if(shared != null && index.size() == 0) {
+			index = shared;
+			this.values = values;
+			if(valuesMap != null)
+				valuesMap.putAll(getValues());
+			return;
+		}
+		
+		for(int cnt = 0; cnt < columns.length; cnt++)
+			put(columns[cnt], values[cnt]);
+	}
+	public void acceptChanges(String[] columns, Object[] values) throws Exception {
+		for(int cnt = 0; cnt < columns.length; cnt++)
+			put(columns[cnt], values[cnt]);
+		modified = null;
+		markClean();
 	}
 	public String generateSave(Adapter adapter) throws Exception {
-		return adapter.generateSave(getTable(), values, getIsDeleted());
+		Map<String, Object> map = getValues();
+		try {
+			return adapter.generateSave(getTable(), map, getModified(), getIsDeleted());
+		}
+		finally {
+			copyBack(map);
+		}
+	}
+	public SaveCommand generateSaveCommand(Adapter adapter) throws Exception {
+		Map<String, Object> map = getValues();
+		SaveCommand ret;
+		try {
+			ret = adapter.generateSaveCommand(getTable(), map, getModified(), getIsDeleted());
+		}
+		finally {
+			copyBack(map);
+		}
+		if(ret != null)
+			ret.setRow(this);
+		return ret;
+	}
+	/**
+	 * Keeps values the adapter filled in, such as a generated GUID.
+	 */
+	private void copyBack(Map<String, Object> map) {
+		for(String column : map.keySet()) {
+			Object value = map.get(column);
+			if(value != get(column))
+				put(column, value);
+		}
 	}
 }
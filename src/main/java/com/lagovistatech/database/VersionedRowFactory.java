@@ -18,8 +18,6 @@
 */
 package com.lagovistatech.database;
 
-import java.util.HashMap;
-
 import com.lagovistatech.Factory;
 
 /**
@@ -41,6 +39,6 @@ public class VersionedRowFactory implements Factory<VersionedRow> {
 	 * @return New row.
 	 */
 	public VersionedRow create() {
-		return new VersionedRow(new HashMap<String, Object>());
+		return new VersionedRow();
 	}
 }
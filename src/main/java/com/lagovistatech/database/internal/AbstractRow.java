@@ -18,6 +18,7 @@
 */
 package com.lagovistatech.database.internal;
 
+import com.lagovistatech.database.ColumnIndex;
 import com.lagovistatech.database.Row;
 import com.lagovistatech.database.Table;
 
@@ -37,6 +38,19 @@ public abstract class AbstractRow implements Row {
 	 */
 	public <R extends Row> void setTable(Table<R> value) { table = value; }
 	
+	/**
+	 * @param columns Columns being loaded.
+	 * @return The table's column index when it was built from exactly these
+	 * columns, so the loaded values can be kept as they are; otherwise null.
+	 */
+	protected ColumnIndex getTableIndex(String[] columns) {
+		if(table == null)
+			return null;
+		
+		ColumnIndex ret = table.getColumnIndex();
+		return ret != null && ret.getColumns() == columns ? ret : null;
+	}
+	
 	private boolean isDeleted = false;
 	/**
 	 * @return True if row is to be deleted.
@@ -45,5 +59,34 @@ public abstract class AbstractRow implements Row {
 	/**
 	 * @param value True if row is to be deleted.
 	 */
-	public void setIsDeleted(boolean value) { isDeleted = value; }
+	public void setIsDeleted(boolean value) { 
+		isDeleted = value;
+		markDirty();
+	}
+	
+	/**
+	 * @return True if the row has changes to save; rows that do not track
+	 * their changes always do.
+	 */
+	protected boolean getIsChanged() { return true; }
+	/**
+	 * Tells the table the row has to be visited when saving, or no longer
+	 * has to if its changes were reverted.
+	 */
+	protected void markDirty() {
+		if(table == null)
+			return;
+		
+		if(isDeleted || getIsChanged())
+			table.markDirty(this);
+		else
+			table.markClean(this);
+	}
+	/**
+	 * Tells the table the row's changes have been saved.
+	 */
+	protected void markClean() {
+		if(table != null)
+			table.markClean(this);
+	}
 }
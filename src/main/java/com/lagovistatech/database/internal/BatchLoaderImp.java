@@ -0,0 +1,162 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.BatchLoader;
+import com.lagovistatech.database.Connection;
+import com.lagovistatech.database.VersionedRow;
+
+public class BatchLoaderImp<R extends VersionedRow> implements BatchLoader<R> {
+	public BatchLoaderImp(Factory<Connection> connections, Factory<R> rowFactory, String tableName) {
+		this.connections = connections;
+		this.rowFactory = rowFactory;
+		this.tableName = tableName;
+	}
+
+	private Factory<Connection> connections;
+	private Factory<R> rowFactory;
+	private String tableName;
+
+	private volatile long window = 2;
+	public long getWindow() { return window; }
+	public void setWindow(long value) { window = value; }
+
+	private volatile int maximumBatchSize = 1000;
+	public int getMaximumBatchSize() { return maximumBatchSize; }
+	public void setMaximumBatchSize(int value) { maximumBatchSize = value; }
+
+	private AtomicLong loads = new AtomicLong();
+	private AtomicLong batches = new AtomicLong();
+	public long getLoadCount() { return loads.get(); }
+	public long getBatchCount() { return batches.get(); }
+
+	private static ThreadFactory daemons(String name) {
+		return runnable -> {
+			Thread thread = new Thread(runnable, name);
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+	private ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemons("batch-loader-timer"));
+	private ExecutorService workers = Executors.newCachedThreadPool(daemons("batch-loader-worker"));
+
+	/**
+	 * Lookups waiting for the next batch; guarded by this.
+	 */
+	private LinkedHashMap<UUID, CompletableFuture<R>> pending = new LinkedHashMap<UUID, CompletableFuture<R>>();
+	private boolean isScheduled = false;
+	private boolean isClosed = false;
+
+	public CompletableFuture<R> load(UUID guid) {
+		loads.incrementAndGet();
+
+		Map<UUID, CompletableFuture<R>> full = null;
+		CompletableFuture<R> ret;
+		synchronized(this) {
+			if(isClosed) {
+				ret = new CompletableFuture<R>();
+				ret.completeExceptionally(new Exception("The batch loader is closed!"));
+				return ret;
+			}
+
+			ret = pending.get(guid);
+			if(ret != null)
+				return ret;
+
+			ret = new CompletableFuture<R>();
+			pending.put(guid, ret);
+			if(pending.size() >= maximumBatchSize)
+				full = take();
+			else if(!isScheduled) {
+				isScheduled = true;
+				timer.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+			}
+		}
+
+		if(full != null) {
+			Map<UUID, CompletableFuture<R>> batch = full;
+			workers.execute(() -> send(batch));
+		}
+		return ret;
+	}
+	private synchronized Map<UUID, CompletableFuture<R>> take() {
+		Map<UUID, CompletableFuture<R>> ret = pending;
+		pending = new LinkedHashMap<UUID, CompletableFuture<R>>();
+		return ret;
+	}
+	private void flush() {
+		Map<UUID, CompletableFuture<R>> batch;
+		synchronized(this) {
+			isScheduled = false;
+			batch = take();
+		}
+		if(!batch.isEmpty())
+			workers.execute(() -> send(batch));
+	}
+	/**
+	 * Looks the batch up with one query on a connection of its own, then
+	 * completes each lookup.
+	 */
+	private void send(Map<UUID, CompletableFuture<R>> batch) {
+		batches.incrementAndGet();
+		try {
+			Map<UUID, R> rows;
+			Connection connection = connections.create();
+			try {
+				connection.open();
+				rows = connection.fillByGuids(rowFactory, tableName, batch.keySet());
+			}
+			finally {
+				connection.close();
+			}
+
+			for(UUID guid : batch.keySet())
+				batch.get(guid).complete(rows.get(guid));
+		}
+		catch(Exception ex) {
+			for(CompletableFuture<R> future : batch.values())
+				future.completeExceptionally(ex);
+		}
+	}
+
+	public void close() {
+		Map<UUID, CompletableFuture<R>> batch;
+		synchronized(this) {
+			isClosed = true;
+			batch = take();
+		}
+		if(!batch.isEmpty())
+			send(batch);
+
+		timer.shutdownNow();
+		workers.shutdown();
+	}
+}
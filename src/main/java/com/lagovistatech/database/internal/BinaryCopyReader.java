@@ -0,0 +1,169 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.UUID;
+
+/**
+ * Decodes the rows of a COPY TO STDOUT (FORMAT binary) stream into the same
+ * Java types the JDBC driver returns from getObject.
+ */
+class BinaryCopyReader implements AutoCloseable {
+	private static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+	private static final LocalDateTime EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+	private static final Instant EPOCH_UTC = Instant.parse("2000-01-01T00:00:00Z");
+	private static final LocalDate EPOCH_DATE = LocalDate.of(2000, 1, 1);
+	
+	BinaryCopyReader(InputStream stream, String[] typeNames) throws Exception {
+		this.stream = new DataInputStream(stream);
+		this.typeNames = typeNames;
+		
+		byte[] signature = new byte[SIGNATURE.length];
+		this.stream.readFully(signature);
+		for(int cnt = 0; cnt < SIGNATURE.length; cnt++)
+			if(signature[cnt] != SIGNATURE[cnt])
+				throw new Exception("The copy stream is not in binary format!");
+		this.stream.readInt();
+		readBytes(this.stream.readInt());
+	}
+	
+	private DataInputStream stream;
+	private String[] typeNames;
+	
+	/**
+	 * @return Values of the next row, or null after the last row.
+	 */
+	Object[] next() throws Exception {
+		short count;
+		try { count = stream.readShort(); }
+		catch(EOFException ex) { return null; }
+		if(count < 0)
+			return null;
+		if(count != typeNames.length)
+			throw new Exception("Expected " + typeNames.length + " columns but received " + count + "!");
+
+		Object[] ret = new Object[count];
+		for(int cnt = 0; cnt < count; cnt++) {
+			int length = stream.readInt();
+			if(length >= 0)
+				ret[cnt] = read(typeNames[cnt], length);
+		}
+		return ret;
+	}
+	private Object read(String typeName, int length) throws Exception {
+		switch(typeName) {
+			case "int2":
+			case "smallserial":
+				return Integer.valueOf(stream.readShort());
+			case "int4":
+			case "serial":
+				return Integer.valueOf(stream.readInt());
+			case "int8":
+			case "bigserial":
+				return Long.valueOf(stream.readLong());
+			case "oid":
+				return Long.valueOf(stream.readInt() & 0xFFFFFFFFL);
+			case "float4":
+				return Float.valueOf(stream.readFloat());
+			case "float8":
+				return Double.valueOf(stream.readDouble());
+			case "money":
+				return Double.valueOf(stream.readLong() / 100.0);
+			case "numeric":
+				return readNumeric();
+			case "bool":
+				return Boolean.valueOf(stream.readByte() != 0);
+			case "uuid":
+				return new UUID(stream.readLong(), stream.readLong());
+			case "bytea":
+				return readBytes(length);
+			case "bpchar":
+			case "varchar":
+			case "text":
+			case "name":
+				return new String(readBytes(length), StandardCharsets.UTF_8);
+			case "timestamp":
+				return java.sql.Timestamp.valueOf(EPOCH.plusNanos(stream.readLong() * 1000));
+			case "timestamptz":
+				return java.sql.Timestamp.from(EPOCH_UTC.plusNanos(stream.readLong() * 1000));
+			case "date":
+				return java.sql.Date.valueOf(EPOCH_DATE.plusDays(stream.readInt()));
+			case "time":
+				LocalTime time = LocalTime.ofNanoOfDay(stream.readLong() * 1000);
+				return new java.sql.Time(java.sql.Time.valueOf(time).getTime() + time.getNano() / 1000000);
+			default:
+				throw new Exception("Type '" + typeName + "' is not supported by binary copy!");
+		}
+	}
+	private byte[] readBytes(int length) throws Exception {
+		byte[] ret = new byte[length];
+		stream.readFully(ret);
+		return ret;
+	}
+	/**
+	 * Numerics are sent as base 10000 digits with a weight, sign, and 
+	 * display scale.  NaN and the infinities have no BigDecimal value and
+	 * are rejected.
+	 */
+	private BigDecimal readNumeric() throws Exception {
+		int digits = stream.readShort();
+		int weight = stream.readShort();
+		int sign = stream.readShort() & 0xFFFF;
+		int scale = stream.readShort();
+		
+		BigInteger unscaled = BigInteger.ZERO;
+		BigInteger base = BigInteger.valueOf(10000);
+		for(int cnt = 0; cnt < digits; cnt++)
+			unscaled = unscaled.multiply(base).add(BigInteger.valueOf(stream.readShort()));
+		if(sign == 0xC000)
+			throw new Exception("Numeric NaN cannot be read as a BigDecimal!");
+		if(sign == 0xD000 || sign == 0xF000)
+			throw new Exception("Numeric " + (sign == 0xF000 ? "-" : "") + "Infinity cannot be read as a BigDecimal!");
+		
+		BigDecimal ret = new BigDecimal(unscaled).scaleByPowerOfTen(4 * (weight - digits + 1));
+		ret = ret.setScale(scale, RoundingMode.DOWN);
+		return sign == 0x4000 ? ret.negate() : ret;
+	}
+	
+	/**
+	 * Reads what is left of the copy before closing, as cancelling it part
+	 * way leaves the connection unable to describe the next statement.
+	 */
+	public void close() throws IOException {
+		byte[] buffer = new byte[8192];
+		try {
+			while(stream.read(buffer) >= 0);
+		}
+		finally {
+			stream.close();
+		}
+	}
+}
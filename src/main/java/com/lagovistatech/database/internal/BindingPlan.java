@@ -0,0 +1,153 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+import com.lagovistatech.database.Row;
+
+/**
+ * The binding plan resolves the labels, type names, and a typed reader for
+ * each column of a result once, so rows can be read without looking up the
+ * result's metadata again.  Readers return the same types as getObject.
+ */
+public class BindingPlan {
+	private interface Reader {
+		Object read(ResultSet rs, int column) throws SQLException;
+	}
+	
+	private static final Reader INTEGER = (rs, column) -> {
+		int value = rs.getInt(column);
+		return rs.wasNull() ? null : Integer.valueOf(value);
+	};
+	private static final Reader LONG = (rs, column) -> {
+		long value = rs.getLong(column);
+		return rs.wasNull() ? null : Long.valueOf(value);
+	};
+	private static final Reader FLOAT = (rs, column) -> {
+		float value = rs.getFloat(column);
+		return rs.wasNull() ? null : Float.valueOf(value);
+	};
+	private static final Reader DOUBLE = (rs, column) -> {
+		double value = rs.getDouble(column);
+		return rs.wasNull() ? null : Double.valueOf(value);
+	};
+	private static final Reader BOOLEAN = (rs, column) -> {
+		boolean value = rs.getBoolean(column);
+		return rs.wasNull() ? null : Boolean.valueOf(value);
+	};
+	private static final Reader STRING = ResultSet::getString;
+	private static final Reader BYTES = ResultSet::getBytes;
+	private static final Reader TIMESTAMP = ResultSet::getTimestamp;
+	private static final Reader DATE = ResultSet::getDate;
+	private static final Reader TIME = ResultSet::getTime;
+	private static final Reader OBJECT = ResultSet::getObject;
+	
+	private static Reader readerFor(String typeName) {
+		switch(typeName) {
+			case "int2":
+			case "int4":
+			case "smallserial":
+			case "serial":
+				return INTEGER;
+			case "int8":
+			case "bigserial":
+				return LONG;
+			case "float4":
+				return FLOAT;
+			case "float8":
+				return DOUBLE;
+			case "bool":
+				return BOOLEAN;
+			case "bpchar":
+			case "varchar":
+			case "text":
+				return STRING;
+			case "bytea":
+				return BYTES;
+			case "timestamp":
+			case "timestamptz":
+				return TIMESTAMP;
+			case "date":
+				return DATE;
+			case "time":
+				return TIME;
+			default:
+				return OBJECT;
+		}
+	}
+	
+	/**
+	 * @param meta Metadata of the result the plan reads.
+	 * @throws SQLException Errors reading the metadata.
+	 */
+	public BindingPlan(ResultSetMetaData meta) throws SQLException {
+		int count = meta.getColumnCount();
+		columns = new String[count];
+		typeNames = new String[count];
+		readers = new Reader[count];
+		for(int cnt = 0; cnt < count; cnt++) {
+			columns[cnt] = meta.getColumnLabel(cnt + 1);
+			typeNames[cnt] = meta.getColumnTypeName(cnt + 1);
+			readers[cnt] = readerFor(typeNames[cnt]);
+		}
+		tableName = count > 0 ? meta.getTableName(1) : null;
+	}
+	
+	private String[] columns;
+	/**
+	 * @return Column labels in result order.
+	 */
+	public String[] getColumns() { return columns; }
+	
+	private String[] typeNames;
+	/**
+	 * @return Column type names in result order.
+	 */
+	public String[] getTypeNames() { return typeNames; }
+	
+	private String tableName;
+	/**
+	 * @return Table of the first column.
+	 */
+	public String getTableName() { return tableName; }
+	
+	private Reader[] readers;
+	/**
+	 * @param rs Result positioned on a row.
+	 * @return Values of the current row in column order.
+	 * @throws SQLException Errors reading the row.
+	 */
+	public Object[] read(ResultSet rs) throws SQLException {
+		Object[] ret = new Object[readers.length];
+		for(int cnt = 0; cnt < readers.length; cnt++)
+			ret[cnt] = readers[cnt].read(rs, cnt + 1);
+		return ret;
+	}
+	/**
+	 * @param rs Result positioned on a row.
+	 * @param row Row to load with the current row's values.
+	 * @throws Exception Errors reading or loading the row.
+	 */
+	public void copy(ResultSet rs, Row row) throws Exception {
+		row.copyFrom(columns, read(rs));
+	}
+}
@@ -0,0 +1,120 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * The chunked list holds elements in fixed size arrays, so access by index
+ * is constant time and growing never copies the elements already held.
+ * 
+ * @param <E> Type of elements.
+ */
+public class ChunkedList<E> extends AbstractList<E> implements RandomAccess {
+	private static final int SHIFT = 10;
+	private static final int CHUNK = 1 << SHIFT;
+	private static final int MASK = CHUNK - 1;
+	
+	private Object[][] chunks = new Object[0][];
+	private int size = 0;
+	
+	/**
+	 * @param capacity Number of elements to allocate room for.
+	 */
+	public void ensureCapacity(int capacity) {
+		int needed = (capacity + MASK) >> SHIFT;
+		if(needed <= chunks.length)
+			return;
+		
+		int previous = chunks.length;
+		chunks = Arrays.copyOf(chunks, Math.max(needed, previous + (previous >> 1)));
+		for(int cnt = previous; cnt < chunks.length; cnt++)
+			chunks[cnt] = new Object[CHUNK];
+	}
+	
+	public int size() { return size; }
+	
+	@SuppressWarnings("unchecked")
+	public E get(int index) {
+		checkIndex(index, size);
+		return (E) chunks[index >> SHIFT][index & MASK];
+	}
+	@SuppressWarnings("unchecked")
+	public E set(int index, E element) {
+		checkIndex(index, size);
+		Object[] chunk = chunks[index >> SHIFT];
+		E ret = (E) chunk[index & MASK];
+		chunk[index & MASK] = element;
+		return ret;
+	}
+	public boolean add(E element) {
+		ensureCapacity(size + 1);
+		chunks[size >> SHIFT][size & MASK] = element;
+		size++;
+		modCount++;
+		return true;
+	}
+	public void add(int index, E element) {
+		checkIndex(index, size + 1);
+		ensureCapacity(size + 1);
+		
+		// move the last element of each chunk into the next, back to front
+		for(int chunk = size >> SHIFT; chunk > index >> SHIFT; chunk--) {
+			System.arraycopy(chunks[chunk], 0, chunks[chunk], 1, MASK);
+			chunks[chunk][0] = chunks[chunk - 1][MASK];
+		}
+		int offset = index & MASK;
+		System.arraycopy(chunks[index >> SHIFT], offset, chunks[index >> SHIFT], offset + 1, MASK - offset);
+		chunks[index >> SHIFT][offset] = element;
+
+		size++;
+		modCount++;
+	}
+	@SuppressWarnings("unchecked")
+	public E remove(int index) {
+		checkIndex(index, size);
+		int offset = index & MASK;
+		E ret = (E) chunks[index >> SHIFT][offset];
+		
+		// move the first element of each following chunk into the previous
+		System.arraycopy(chunks[index >> SHIFT], offset + 1, chunks[index >> SHIFT], offset, MASK - offset);
+		int last = (size - 1) >> SHIFT;
+		for(int chunk = index >> SHIFT; chunk < last; chunk++) {
+			chunks[chunk][MASK] = chunks[chunk + 1][0];
+			System.arraycopy(chunks[chunk + 1], 1, chunks[chunk + 1], 0, MASK);
+		}
+		
+		size--;
+		chunks[size >> SHIFT][size & MASK] = null;
+		modCount++;
+		return ret;
+	}
+	public void clear() {
+		chunks = new Object[0][];
+		size = 0;
+		modCount++;
+	}
+	
+	private static void checkIndex(int index, int limit) {
+		if(index < 0 || index >= limit)
+			throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + limit);
+	}
+}
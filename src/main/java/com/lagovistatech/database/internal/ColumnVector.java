@@ -0,0 +1,220 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A column vector appends one column of a result into a typed array.  The
+ * vector is chosen by the column's type name; types without a primitive
+ * vector are kept as objects.
+ */
+abstract class ColumnVector {
+	private static final int INITIAL_CAPACITY = 64;
+	
+	static ColumnVector forType(String name, String typeName) {
+		switch(typeName) {
+			case "int2":
+			case "int4":
+			case "smallserial":
+			case "serial":
+				return new IntVector(name);
+			case "int8":
+			case "bigserial":
+				return new LongVector(name);
+			case "float4":
+				return new FloatVector(name);
+			case "float8":
+				return new DoubleVector(name);
+			case "bool":
+				return new BooleanVector(name);
+			case "bpchar":
+			case "varchar":
+			case "text":
+				return new StringVector(name);
+			default:
+				return new ObjectVector(name);
+		}
+	}
+	
+	protected ColumnVector(String name) {
+		this.name = name;
+	}
+	
+	protected String name;
+	protected int size = 0;
+	protected int capacity = INITIAL_CAPACITY;
+	private long[] nulls = new long[INITIAL_CAPACITY / 64];
+	
+	int size() { return size; }
+	boolean isNull(int row) { return (nulls[row >> 6] & (1L << row)) != 0; }
+	
+	/**
+	 * Appends the column of the current row.
+	 */
+	void read(ResultSet rs, int column) throws SQLException {
+		reserve();
+		if(!append(rs, column) || rs.wasNull())
+			nulls[size >> 6] |= 1L << size;
+		size++;
+	}
+	/**
+	 * Appends the rows of another vector made for the same column type.
+	 */
+	void append(ColumnVector other) {
+		for(int row = 0; row < other.size; row++) {
+			reserve();
+			if(other.isNull(row))
+				nulls[size >> 6] |= 1L << size;
+			else
+				copy(other, row);
+			size++;
+		}
+	}
+	private void reserve() {
+		if(size == capacity) {
+			capacity *= 2;
+			nulls = Arrays.copyOf(nulls, capacity / 64);
+			grow(capacity);
+		}
+	}
+	/**
+	 * @return False if the value was null.
+	 */
+	protected abstract boolean append(ResultSet rs, int column) throws SQLException;
+	/**
+	 * Copies a non-null row of another vector of the same class to the end.
+	 */
+	protected abstract void copy(ColumnVector other, int row);
+	protected abstract void grow(int capacity);
+	
+	abstract Object get(int row);
+	int getInt(int row) { throw new IllegalArgumentException("Column '" + name + "' is not an integer column!"); }
+	long getLong(int row) { return getInt(row); }
+	double getDouble(int row) { return getLong(row); }
+	boolean getBoolean(int row) { throw new IllegalArgumentException("Column '" + name + "' is not a boolean column!"); }
+	
+	static class IntVector extends ColumnVector {
+		IntVector(String name) { super(name); }
+		private int[] values = new int[capacity];
+		protected boolean append(ResultSet rs, int column) throws SQLException {
+			values[size] = rs.getInt(column);
+			return true;
+		}
+		protected void copy(ColumnVector other, int row) { values[size] = ((IntVector) other).values[row]; }
+		protected void grow(int capacity) { values = Arrays.copyOf(values, capacity); }
+		Object get(int row) { return isNull(row) ? null : Integer.valueOf(values[row]); }
+		int getInt(int row) { return values[row]; }
+	}
+	static class LongVector extends ColumnVector {
+		LongVector(String name) { super(name); }
+		private long[] values = new long[capacity];
+		protected boolean append(ResultSet rs, int column) throws SQLException {
+			values[size] = rs.getLong(column);
+			return true;
+		}
+		protected void copy(ColumnVector other, int row) { values[size] = ((LongVector) other).values[row]; }
+		protected void grow(int capacity) { values = Arrays.copyOf(values, capacity); }
+		Object get(int row) { return isNull(row) ? null : Long.valueOf(values[row]); }
+		int getInt(int row) { return Math.toIntExact(values[row]); }
+		long getLong(int row) { return values[row]; }
+	}
+	static class FloatVector extends ColumnVector {
+		FloatVector(String name) { super(name); }
+		private float[] values = new float[capacity];
+		protected boolean append(ResultSet rs, int column) throws SQLException {
+			values[size] = rs.getFloat(column);
+			return true;
+		}
+		protected void copy(ColumnVector other, int row) { values[size] = ((FloatVector) other).values[row]; }
+		protected void grow(int capacity) { values = Arrays.copyOf(values, capacity); }
+		Object get(int row) { return isNull(row) ? null : Float.valueOf(values[row]); }
+		long getLong(int row) { throw new IllegalArgumentException("Column '" + name + "' is not an integer column!"); }
+		double getDouble(int row) { return values[row]; }
+	}
+	static class DoubleVector extends ColumnVector {
+		DoubleVector(String name) { super(name); }
+		private double[] values = new double[capacity];
+		protected boolean append(ResultSet rs, int column) throws SQLException {
+			values[size] = rs.getDouble(column);
+			return true;
+		}
+		protected void copy(ColumnVector other, int row) { values[size] = ((DoubleVector) other).values[row]; }
+		protected void grow(int capacity) { values = Arrays.copyOf(values, capacity); }
+		Object get(int row) { return isNull(row) ? null : Double.valueOf(values[row]); }
+		long getLong(int row) { throw new IllegalArgumentException("Column '" + name + "' is not an integer column!"); }
+		double getDouble(int row) { return values[row]; }
+	}
+	static class BooleanVector extends ColumnVector {
+		BooleanVector(String name) { super(name); }
+		private boolean[] values = new boolean[capacity];
+		protected boolean append(ResultSet rs, int column) throws SQLException {
+			values[size] = rs.getBoolean(column);
+			return true;
+		}
+		protected void copy(ColumnVector other, int row) { values[size] = ((BooleanVector) other).values[row]; }
+		protected void grow(int capacity) { values = Arrays.copyOf(values, capacity); }
+		Object get(int row) { return isNull(row) ? null : Boolean.valueOf(values[row]); }
+		boolean getBoolean(int row) { return values[row]; }
+	}
+	/**
+	 * Strings are stored as codes into a dictionary of distinct values.
+	 */
+	static class StringVector extends ColumnVector {
+		StringVector(String name) { super(name); }
+		private int[] codes = new int[capacity];
+		private HashMap<String, Integer> lookup = new HashMap<String, Integer>();
+		private ArrayList<String> dictionary = new ArrayList<String>();
+		protected boolean append(ResultSet rs, int column) throws SQLException {
+			String value = rs.getString(column);
+			if(value == null)
+				return false;
+			
+			codes[size] = encode(value);
+			return true;
+		}
+		protected void copy(ColumnVector other, int row) { codes[size] = encode((String) other.get(row)); }
+		private int encode(String value) {
+			Integer ret = lookup.get(value);
+			if(ret == null) {
+				ret = dictionary.size();
+				dictionary.add(value);
+				lookup.put(value, ret);
+			}
+			return ret;
+		}
+		protected void grow(int capacity) { codes = Arrays.copyOf(codes, capacity); }
+		Object get(int row) { return isNull(row) ? null : dictionary.get(codes[row]); }
+	}
+	static class ObjectVector extends ColumnVector {
+		ObjectVector(String name) { super(name); }
+		private Object[] values = new Object[capacity];
+		protected boolean append(ResultSet rs, int column) throws SQLException {
+			values[size] = rs.getObject(column);
+			return values[size] != null;
+		}
+		protected void copy(ColumnVector other, int row) { values[size] = ((ObjectVector) other).values[row]; }
+		protected void grow(int capacity) { values = Arrays.copyOf(values, capacity); }
+		Object get(int row) { return values[row]; }
+	}
+}
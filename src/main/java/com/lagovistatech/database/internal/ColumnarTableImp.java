@@ -0,0 +1,97 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.sql.ResultSet;
+import java.util.AbstractList;
+import java.util.HashMap;
+
+import com.lagovistatech.database.ColumnIndex;
+import com.lagovistatech.database.ColumnarRow;
+import com.lagovistatech.database.ColumnarTable;
+
+public class ColumnarTableImp extends AbstractList<ColumnarRow> implements ColumnarTable {
+	public ColumnarTableImp(BindingPlan plan) {
+		tableName = plan.getTableName();
+		columnIndex = ColumnIndex.of(plan.getColumns());
+		
+		schema = new HashMap<String, String>();
+		vectors = new ColumnVector[plan.getColumns().length];
+		for(int cnt = 0; cnt < vectors.length; cnt++) {
+			schema.put(plan.getColumns()[cnt], plan.getTypeNames()[cnt]);
+			vectors[cnt] = ColumnVector.forType(plan.getColumns()[cnt], plan.getTypeNames()[cnt]);
+		}
+	}
+	
+	private String tableName;
+	public String getTableName() { return tableName; }
+
+	private HashMap<String, String> schema;
+	public HashMap<String, String> getSchema() { return schema; }
+
+	private ColumnIndex columnIndex;
+	public ColumnIndex getColumnIndex() { return columnIndex; }
+
+	private ColumnVector[] vectors;
+	private int size = 0;
+	/**
+	 * Appends the current row of the result; the result must have the 
+	 * columns of the plan the table was created with.
+	 */
+	void read(ResultSet rs) throws Exception {
+		for(int cnt = 0; cnt < vectors.length; cnt++)
+			vectors[cnt].read(rs, cnt + 1);
+		size++;
+	}
+	/**
+	 * Appends the rows of another table filled by the same query.
+	 */
+	void append(ColumnarTableImp other) {
+		for(int cnt = 0; cnt < vectors.length; cnt++)
+			vectors[cnt].append(other.vectors[cnt]);
+		size += other.size;
+	}
+	/**
+	 * @return Vector of the column, once the row is checked to be in the
+	 * table; the vectors have room past the last row.
+	 */
+	private ColumnVector vector(int row, String column) {
+		if(row < 0 || row >= size)
+			throw new IndexOutOfBoundsException(row);
+		
+		int slot = columnIndex.slotOf(column);
+		if(slot < 0)
+			throw new IllegalArgumentException("Column '" + column + "' does not exist!");
+		return vectors[slot];
+	}
+
+	public Object getValue(int row, String column) { return vector(row, column).get(row); }
+	public boolean isNull(int row, String column) { return vector(row, column).isNull(row); }
+	public int getInt(int row, String column) { return vector(row, column).getInt(row); }
+	public long getLong(int row, String column) { return vector(row, column).getLong(row); }
+	public double getDouble(int row, String column) { return vector(row, column).getDouble(row); }
+	public boolean getBoolean(int row, String column) { return vector(row, column).getBoolean(row); }
+
+	public int size() { return size; }
+	public ColumnarRow get(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(index);
+		return new ColumnarRow(this, index);
+	}
+}
@@ -0,0 +1,55 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lagovistatech.database.SaveCommand;
+
+/**
+ * Builds a save command by appending SQL and values in statement order.
+ */
+class CommandBuilder {
+	CommandBuilder(SaveCommand.Kind kind) {
+		this.kind = kind;
+	}
+
+	private SaveCommand.Kind kind;
+	private StringBuilder current = new StringBuilder();
+	private List<String> fragments = new ArrayList<String>();
+	private List<Object> values = new ArrayList<Object>();
+
+	CommandBuilder append(String sql) {
+		current.append(sql);
+		return this;
+	}
+	CommandBuilder appendValue(Object value) {
+		fragments.add(current.toString());
+		current.setLength(0);
+		values.add(value);
+		return this;
+	}
+	
+	SaveCommand build() {
+		fragments.add(current.toString());
+		current.setLength(0);
+		return new SaveCommand(kind, fragments, values);
+	}
+}
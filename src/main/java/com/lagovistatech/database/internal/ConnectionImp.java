@@ -19,15 +19,33 @@
 package com.lagovistatech.database.internal;
 
 import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.lagovistatech.Factory;
 import com.lagovistatech.database.Adapter;
+import com.lagovistatech.database.ColumnIndex;
+import com.lagovistatech.database.ColumnarTable;
 import com.lagovistatech.database.Connection;
+import com.lagovistatech.database.GuidFactory;
 import com.lagovistatech.database.Parameters;
 import com.lagovistatech.database.Row;
+import com.lagovistatech.database.SaveCommand;
 import com.lagovistatech.database.Table;
 import com.lagovistatech.database.TableFactory;
+import com.lagovistatech.database.UpsertRule;
+import com.lagovistatech.database.VersionedRow;
 
 public class ConnectionImp implements Connection {
 	public ConnectionImp(Adapter adapter) {
@@ -51,55 +69,464 @@ public class ConnectionImp implements Connection {
 
 	public void setPassword(String password) { adapter.setPassword(password); }
 	
+	public int getBatchSize() { return adapter.getBatchSize(); }
+	public void setBatchSize(int value) { adapter.setBatchSize(value); }
+
+	public int getFetchSize() { return adapter.getFetchSize(); }
+	public void setFetchSize(int value) { adapter.setFetchSize(value); }
+
 	private Adapter adapter;
 	public void setAdapter(Adapter value) { this.adapter = value; }
 	public Adapter getAdapter() { return adapter; }
 	
 	public void open() throws Exception { adapter.open(); }
-	public void close() throws Exception { adapter.close(); }
+	public void close() throws Exception {
+		try {
+			if(adapter.isInTransaction())
+				adapter.rollback();
+		}
+		finally {
+			adapter.close();
+		}
+	}
 
 	public long execute(String sql, Parameters params) throws Exception {
-		String processed = sql;	
-		if(params != null)
-			for(String key : params.keySet())
-				processed = processed.replace(key, adapter.objectToSql(params.get(key)));
+		if(params == null || params.isEmpty())
+			return execute(sql);
 		
-		return execute(processed);
+		return adapter.execute(sql, params);
 	}
 	public long execute(String sql) throws Exception {
 		return adapter.execute(sql);
 	}
 	public <R extends Row> Table<R> fill(Factory<R> rowFactory, String sql, Parameters params) throws Exception { 
-		String processed = sql;		
-		if(params != null)
-			for(String key : params.keySet())
-				processed = processed.replace(key, adapter.objectToSql(params.get(key)));
+		if(params == null || params.isEmpty())
+			return fill(rowFactory, sql);
 		
-		return fill(rowFactory, processed);
+		return fill(rowFactory, adapter.fill(sql, params));
 	}
 	public <R extends Row> Table<R> fill(Factory<R> rowFactory, String sql) throws Exception { 
-		ResultSet rs = adapter.fill(sql);
+		return fill(rowFactory, adapter.fill(sql));
+	}
+	private <R extends Row> Table<R> fill(Factory<R> rowFactory, ResultSet rs) throws Exception { 
+		try {
+			BindingPlan plan = new BindingPlan(rs.getMetaData());
+			Table<R> ret = createTable(rowFactory, plan);
+			if(rs.getType() != ResultSet.TYPE_FORWARD_ONLY && rs.last()) {
+				ret.ensureCapacity(rs.getRow());
+				rs.beforeFirst();
+			}
+			while(rs.next()) {
+				R row = ret.createRow();
+				plan.copy(rs, row);
+			}
+			
+			return ret;
+		}
+		finally {
+			rs.close();
+		}
+	}
+	public <R extends Row> Table<R> fillBinary(Factory<R> rowFactory, String sql, Parameters params) throws Exception {
+		if(params == null)
+			params = new Parameters();
+		
+		BindingPlan plan = new BindingPlan(adapter.describe(sql, params));
+		Table<R> ret = createTable(rowFactory, plan);
+		
+		String[] columns = plan.getColumns();
+		try(BinaryCopyReader reader = new BinaryCopyReader(adapter.copyOut(sql, params), plan.getTypeNames())) {
+			Object[] values;
+			while((values = reader.next()) != null) {
+				R row = ret.createRow();
+				row.copyFrom(columns, values);
+			}
+		}
 		
+		return ret;
+	}
+	public <R extends Row> Table<R> fillBinary(Factory<R> rowFactory, String sql) throws Exception {
+		return fillBinary(rowFactory, sql, null);
+	}
+	/**
+	 * Keys bound in a single lookup query.
+	 */
+	private static final int MAXIMUM_KEYS = 10000;
+	public <R extends Row, K> Map<K, R> fillByKeys(Factory<R> rowFactory, String tableName, String keyColumn, Collection<K> keys) throws Exception {
+		List<K> distinct = new ArrayList<K>(new LinkedHashSet<K>(keys));
+		distinct.remove(null);
+		
+		Map<Object, R> found = new HashMap<Object, R>();
+		Table<R> table = null;
+		BindingPlan plan = null;
+		for(int start = 0; start < distinct.size(); start += MAXIMUM_KEYS) {
+			Object[] chunk = distinct.subList(start, Math.min(start + MAXIMUM_KEYS, distinct.size())).toArray();
+			try(ResultSet rs = adapter.fillByKeys(tableName, keyColumn, chunk)) {
+				if(plan == null) {
+					String columnType = rs.getMetaData().getColumnClassName(rs.findColumn(keyColumn));
+					String keyType = chunk[0].getClass().getName();
+					if(!columnType.equals(keyType))
+						throw new Exception("Keys of type '" + keyType + "' do not match column '" + keyColumn + "' of type '" + columnType + "'!");
+					
+					plan = new BindingPlan(rs.getMetaData());
+					table = createTable(rowFactory, plan);
+				}
+				while(rs.next()) {
+					R row = table.createRow();
+					plan.copy(rs, row);
+					found.put(row.get(keyColumn), row);
+				}
+			}
+		}
+		
+		Map<K, R> ret = new LinkedHashMap<K, R>();
+		for(K key : distinct) {
+			R row = found.get(key);
+			if(row != null)
+				ret.put(key, row);
+		}
+		return ret;
+	}
+	public <R extends VersionedRow> Map<UUID, R> fillByGuids(Factory<R> rowFactory, String tableName, Collection<UUID> guids) throws Exception {
+		return fillByKeys(rowFactory, tableName, VersionedRow.COLUMN_GUID, guids);
+	}
+	public ColumnarTable fillColumnar(String sql, Parameters params) throws Exception {
+		ResultSet rs = params == null || params.isEmpty() ? adapter.fill(sql) : adapter.fill(sql, params);
+		try {
+			ColumnarTableImp ret = new ColumnarTableImp(new BindingPlan(rs.getMetaData()));
+			while(rs.next())
+				ret.read(rs);
+			return ret;
+		}
+		finally {
+			rs.close();
+		}
+	}
+	public ColumnarTable fillColumnar(String sql) throws Exception {
+		return fillColumnar(sql, null);
+	}
+	/**
+	 * @return Empty table with the name and schema of the result.
+	 */
+	static <R extends Row> Table<R> createTable(Factory<R> rowFactory, BindingPlan plan) throws Exception {
 		HashMap<String, String> schema = new HashMap<String, String>();
-		for(int cnt = 1; cnt <= rs.getMetaData().getColumnCount(); cnt++)
-			schema.put(rs.getMetaData().getColumnLabel(cnt), rs.getMetaData().getColumnTypeName(cnt));
+		for(int cnt = 0; cnt < plan.getColumns().length; cnt++)
+			schema.put(plan.getColumns()[cnt], plan.getTypeNames()[cnt]);
 
 		Table<R> ret = TableFactory.instanciate(rowFactory);
-		ret.setTableName(rs.getMetaData().getTableName(1));
+		ret.setTableName(plan.getTableName());
 		ret.setSchema(schema);
+		ret.setColumnIndex(ColumnIndex.of(plan.getColumns()));
+		return ret;
+	}
+	
+	public <R extends Row> Stream<R> stream(Factory<R> rowFactory, String sql) throws Exception {
+		return stream(rowFactory, sql, null);
+	}
+	public <R extends Row> Stream<R> stream(Factory<R> rowFactory, String sql, Parameters params) throws Exception {
+		boolean isOwner = !adapter.isInTransaction();
+		if(isOwner)
+			adapter.begin();
 		
-		while(rs.next()) {
-			R row = ret.createRow();
-			row.copyFrom(rs);
+		RowCursor<R> cursor;
+		try {
+			ResultSet rs = adapter.stream(sql, params == null ? new Parameters() : params);
+			cursor = new RowCursor<R>(rowFactory, rs, isOwner ? adapter : null);
+		}
+		catch(Exception ex) {
+			if(isOwner)
+				adapter.rollback();
+			throw ex;
 		}
 		
-		return ret;
+		return StreamSupport.stream(cursor.spliterator(), false).onClose(cursor::close);
 	}
 	public <R extends Row> long save(Table<R> table) throws Exception {
-		return execute(table.generateSave(adapter));
+		WriteBack writeBack = new WriteBack();
+		long ret = save(table.getDirtyRows(), writeBack);
+		writeBack.apply(table);
+		return ret;
+	}
+	/**
+	 * Saves the rows, collecting the returned values to write back once all
+	 * of the rows' connections are done.
+	 */
+	<R extends Row> long save(List<R> rows, WriteBack writeBack) throws Exception {
+		List<SaveCommand> commands = adapter.coalesce(generateSaveCommands(rows));
+		
+		long ret = 0;
+		boolean isOwner = !adapter.isInTransaction();
+		if(isOwner)
+			adapter.begin();
+		try {
+			long[] count = new long[1];
+			adapter.executeReturning(commands, (command, rs) -> {
+				BindingPlan plan = new BindingPlan(rs.getMetaData());
+				Map<Object, Row> byGuid = command.getRows().size() > 1 ? guidsOf(command) : null;
+				int guid = Arrays.asList(plan.getColumns()).indexOf(VersionedRow.COLUMN_GUID);
+				int index = 0;
+				while(rs.next()) {
+					Object[] returned = plan.read(rs);
+					Row row;
+					if(command.getRows().size() == 1)
+						row = command.getRow();
+					else if(byGuid != null && guid >= 0)
+						row = byGuid.get(returned[guid]);
+					else
+						// combined inserts without a GUID return rows in value order
+						row = index < command.getRows().size() ? command.getRows().get(index) : null;
+					if(row != null)
+						writeBack.add(row, plan.getColumns(), returned);
+					index++;
+				}
+				count[0] += index;
+			});
+			ret = count[0];
+			
+			if(isOwner)
+				adapter.commit();
+		}
+		catch(Exception ex) {
+			if(isOwner)
+				adapter.rollback();
+			throw ex;
+		}
+		
+		return ret;
+	}
+	/**
+	 * @return Rows of a combined command by the GUID each was sent with, or
+	 * null when the command does not send GUIDs.
+	 */
+	private static Map<Object, Row> guidsOf(SaveCommand command) {
+		int guid = command.getColumns().indexOf(VersionedRow.COLUMN_GUID);
+		int width = command.getColumns().size();
+		if(guid < 0 || command.getValues().size() != width * command.getRows().size())
+			return null;
+		
+		Map<Object, Row> ret = new HashMap<Object, Row>();
+		for(int cnt = 0; cnt < command.getRows().size(); cnt++)
+			ret.put(command.getValues().get(cnt * width + guid), command.getRows().get(cnt));
+		return ret;
+	}
+	private <R extends Row> List<SaveCommand> generateSaveCommands(List<R> rows) throws Exception {
+		List<SaveCommand> ret = new ArrayList<SaveCommand>();
+		for(R row : rows) {
+			SaveCommand command = row.generateSaveCommand(adapter);
+			if(command != null)
+				ret.add(command);
+		}
+		return ret;
+	}
+
+	/**
+	 * Collects what a statement run without RETURNING stored for its row: the
+	 * values an insert sent, or the next version of an updated versioned row.
+	 */
+	private static void writeBackSent(SaveCommand command, WriteBack writeBack) {
+		Row row = command.getRow();
+		if(command.getKind() == SaveCommand.Kind.Insert)
+			writeBack.add(row, command.getColumns().toArray(new String[0]), command.getValues().toArray());
+		else if(command.getKind() == SaveCommand.Kind.Update && row instanceof VersionedRow)
+			writeBack.add(row, new String[] { VersionedRow.COLUMN_VERSION }, new Object[] { ((VersionedRow) row).getVersion() + 1 });
+		else
+			writeBack.add(row, new String[0], new Object[0]);
+	}
+
+	public <R extends Row> Map<R, Long> saveBatch(Table<R> table) throws Exception {
+		WriteBack writeBack = new WriteBack();
+		Map<R, Long> ret = saveBatch(table.getDirtyRows(), writeBack);
+		writeBack.apply(table);
+		return ret;
+	}
+	/**
+	 * Saves the rows in batches, collecting the values of the rows written
+	 * to write back once all of the rows' connections are done.
+	 */
+	@SuppressWarnings("unchecked")
+	<R extends Row> Map<R, Long> saveBatch(List<R> rows, WriteBack writeBack) throws Exception {
+		List<SaveCommand> commands = generateSaveCommands(rows);
+		
+		Map<R, Long> ret = new LinkedHashMap<R, Long>();
+		Map<String, List<SaveCommand>> shapes = new LinkedHashMap<String, List<SaveCommand>>();
+		for(SaveCommand command : commands) {
+			ret.put((R) command.getRow(), Long.valueOf(0));
+			shapes.computeIfAbsent(command.getSql(), sql -> new ArrayList<SaveCommand>()).add(command);
+		}
+		
+		List<SaveCommand> written = new ArrayList<SaveCommand>();
+		boolean isOwner = !adapter.isInTransaction();
+		if(isOwner)
+			adapter.begin();
+		try {
+			for(String sql : shapes.keySet()) {
+				List<SaveCommand> shape = shapes.get(sql);
+				List<List<Object>> values = new ArrayList<List<Object>>(shape.size());
+				for(SaveCommand command : shape)
+					values.add(command.getValues());
+				
+				long[] counts = adapter.executeBatch(sql, values);
+				for(int cnt = 0; cnt < counts.length; cnt++) {
+					ret.put((R) shape.get(cnt).getRow(), counts[cnt]);
+					// stale versions update nothing and stay dirty
+					if(counts[cnt] > 0)
+						written.add(shape.get(cnt));
+				}
+			}
+			
+			if(isOwner)
+				adapter.commit();
+		}
+		catch(Exception ex) {
+			if(isOwner)
+				adapter.rollback();
+			throw ex;
+		}
+		
+		for(SaveCommand command : written)
+			writeBackSent(command, writeBack);
+		return ret;
+	}
+
+	public <R extends Row> long load(Table<R> table) throws Exception {
+		WriteBack writeBack = new WriteBack();
+		long ret = load(table, table.getDirtyRows(), writeBack);
+		writeBack.apply(table);
+		return ret;
+	}
+	/**
+	 * Copies the new rows in, collecting the values sent, such as the GUID
+	 * and first version, to write back once all of the rows' connections are
+	 * done.
+	 */
+	<R extends Row> long load(Table<R> table, List<R> rows, WriteBack writeBack) throws Exception {
+		List<SaveCommand> commands = generateSaveCommands(rows);
+		Map<List<String>, List<List<Object>>> shapes = new LinkedHashMap<List<String>, List<List<Object>>>();
+		for(SaveCommand command : commands) {
+			if(command.getKind() != SaveCommand.Kind.Insert)
+				throw new Exception("Only new rows can be loaded!");
+			shapes.computeIfAbsent(command.getColumns(), columns -> new ArrayList<List<Object>>()).add(command.getValues());
+		}
+		
+		long ret = 0;
+		boolean isOwner = !adapter.isInTransaction();
+		if(isOwner)
+			adapter.begin();
+		try {
+			for(List<String> columns : shapes.keySet())
+				ret += adapter.copyIn(table.getTableName(), columns, shapes.get(columns));
+			
+			if(isOwner)
+				adapter.commit();
+		}
+		catch(Exception ex) {
+			if(isOwner)
+				adapter.rollback();
+			throw ex;
+		}
+		
+		for(SaveCommand command : commands)
+			writeBackSent(command, writeBack);
+		return ret;
+	}
+
+	public <R extends VersionedRow> Set<UUID> update(Table<R> table) throws Exception {
+		WriteBack writeBack = new WriteBack();
+		Set<UUID> ret = update(table, table.getDirtyRows(), writeBack);
+		writeBack.apply(table);
+		return ret;
+	}
+	<R extends VersionedRow> Set<UUID> update(Table<R> table, List<R> dirty, WriteBack writeBack) throws Exception {
+		Set<UUID> ret = new LinkedHashSet<UUID>();
+		Map<UUID, R> rows = new HashMap<UUID, R>();
+		Map<UUID, Long> versions = new HashMap<UUID, Long>();
+		Map<Set<String>, List<Map<String, Object>>> shapes = new LinkedHashMap<Set<String>, List<Map<String, Object>>>();
+		for(R row : dirty) {
+			Set<String> modified = new TreeSet<String>(row.getModified());
+			modified.remove(VersionedRow.COLUMN_GUID);
+			modified.remove(VersionedRow.COLUMN_VERSION);
+			if(row.getIsDeleted() || row.getVersion() < 1 || modified.isEmpty())
+				continue;
+			
+			shapes.computeIfAbsent(modified, columns -> new ArrayList<Map<String, Object>>()).add(row.getValues());
+			ret.add(row.getGuid());
+			rows.put(row.getGuid(), row);
+		}
+		
+		boolean isOwner = !adapter.isInTransaction();
+		if(isOwner)
+			adapter.begin();
+		try {
+			for(Set<String> columns : shapes.keySet())
+				versions.putAll(adapter.updateVersioned(table, columns, shapes.get(columns)));
+			
+			if(isOwner)
+				adapter.commit();
+		}
+		catch(Exception ex) {
+			if(isOwner)
+				adapter.rollback();
+			throw ex;
+		}
+		
+		String[] columns = new String[] { VersionedRow.COLUMN_VERSION };
+		for(UUID guid : versions.keySet()) {
+			ret.remove(guid);
+			writeBack.add(rows.get(guid), columns, new Object[] { versions.get(guid) });
+		}
+		return ret;
+	}
+
+	public <R extends VersionedRow> Set<UUID> upsert(Table<R> table, UpsertRule rule) throws Exception {
+		WriteBack writeBack = new WriteBack();
+		Set<UUID> ret = upsert(table, table.getDirtyRows(), rule, writeBack);
+		writeBack.apply(table);
+		return ret;
+	}
+	<R extends VersionedRow> Set<UUID> upsert(Table<R> table, List<R> dirty, UpsertRule rule, WriteBack writeBack) throws Exception {
+		Set<UUID> ret = new LinkedHashSet<UUID>();
+		Map<UUID, R> rows = new HashMap<UUID, R>();
+		Map<UUID, Long> versions = new HashMap<UUID, Long>();
+		Map<Set<String>, List<Map<String, Object>>> shapes = new LinkedHashMap<Set<String>, List<Map<String, Object>>>();
+		for(R row : dirty) {
+			if(row.getIsDeleted())
+				continue;
+			
+			Map<String, Object> values = row.getValues();
+			if(values.get(VersionedRow.COLUMN_GUID) == null)
+				values.put(VersionedRow.COLUMN_GUID, GuidFactory.instanciate());
+			
+			UUID guid = (UUID) values.get(VersionedRow.COLUMN_GUID);
+			shapes.computeIfAbsent(new TreeSet<String>(values.keySet()), columns -> new ArrayList<Map<String, Object>>()).add(values);
+			ret.add(guid);
+			rows.put(guid, row);
+		}
+		
+		boolean isOwner = !adapter.isInTransaction();
+		if(isOwner)
+			adapter.begin();
+		try {
+			for(Set<String> columns : shapes.keySet())
+				versions.putAll(adapter.upsertVersioned(table, columns, shapes.get(columns), rule));
+			
+			if(isOwner)
+				adapter.commit();
+		}
+		catch(Exception ex) {
+			if(isOwner)
+				adapter.rollback();
+			throw ex;
+		}
+		
+		String[] columns = new String[] { VersionedRow.COLUMN_GUID, VersionedRow.COLUMN_VERSION };
+		for(UUID guid : versions.keySet()) {
+			ret.remove(guid);
+			writeBack.add(rows.get(guid), columns, new Object[] { guid, versions.get(guid) });
+		}
+		return ret;
 	}
 
-	public void begin() throws Exception { adapter.execute("BEGIN"); }
-	public void commit() throws Exception { adapter.execute("COMMIT"); }
-	public void rollback() throws Exception { adapter.execute("ROLLBACK"); }
+	public void begin() throws Exception { adapter.begin(); }
+	public void commit() throws Exception { adapter.commit(); }
+	public void rollback() throws Exception { adapter.rollback(); }
 }
@@ -0,0 +1,276 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.Adapter;
+import com.lagovistatech.database.Connection;
+import com.lagovistatech.database.ConnectionPool;
+
+public class ConnectionPoolImp implements ConnectionPool {
+	/**
+	 * Adapters used within this window are handed out without a validation
+	 * round trip to the server.
+	 */
+	private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+	public ConnectionPoolImp(Factory<Adapter> adapterFactory) {
+		this.adapterFactory = adapterFactory;
+	}
+
+	private String server;
+	public String getServer() { return server; }
+	public void setServer(String server) { this.server = server; }
+
+	private int port = 5432;
+	public int getPort() { return port; }
+	public void setPort(int port) { this.port = port; }
+
+	private String database;
+	public String getDatabase() { return database; }
+	public void setDatabase(String database) { this.database = database; }
+
+	private String user;
+	public String getUser() { return user; }
+	public void setUser(String user) { this.user = user; }
+
+	private int timeOut = 30;
+	public int getTimeOut() { return timeOut; }
+	public void setTimeOut(int timeOut) { this.timeOut = timeOut; }
+
+	private String password;
+	public void setPassword(String password) { this.password = password; }
+
+	private int statementCacheSize = 64;
+	public int getStatementCacheSize() { return statementCacheSize; }
+	public void setStatementCacheSize(int value) { statementCacheSize = value; }
+
+	private int minimumIdle = 2;
+	public int getMinimumIdle() { return minimumIdle; }
+	public void setMinimumIdle(int value) { minimumIdle = value; }
+
+	private int maximumSize = 10;
+	public int getMaximumSize() { return maximumSize; }
+	public void setMaximumSize(int value) { maximumSize = value; }
+
+	private long maximumWait = 30000;
+	public long getMaximumWait() { return maximumWait; }
+	public void setMaximumWait(long value) { maximumWait = value; }
+
+	private long idleTimeOut = 600000;
+	public long getIdleTimeOut() { return idleTimeOut; }
+	public void setIdleTimeOut(long value) { idleTimeOut = value; }
+
+	private static class Entry {
+		Entry(Adapter adapter) {
+			this.adapter = adapter;
+			this.lastUsed = System.nanoTime();
+		}
+		final Adapter adapter;
+		final long lastUsed;
+	}
+
+	private Factory<Adapter> adapterFactory;
+	private LinkedBlockingDeque<Entry> idle = new LinkedBlockingDeque<Entry>();
+	private volatile Semaphore permits;
+	/**
+	 * Semaphore each borrowed adapter took its permit from, as reopening the
+	 * pool replaces the semaphore while adapters may still be borrowed.
+	 */
+	private Map<Adapter, Semaphore> leases = new ConcurrentHashMap<Adapter, Semaphore>();
+	private ScheduledExecutorService evictor;
+	private volatile boolean isOpen = false;
+
+	private AtomicInteger active = new AtomicInteger();
+	private AtomicInteger waiting = new AtomicInteger();
+	private AtomicLong borrows = new AtomicLong();
+	private AtomicLong timeOuts = new AtomicLong();
+	private AtomicLong waitNanos = new AtomicLong();
+
+	public int getActiveCount() { return active.get(); }
+	public int getIdleCount() { return idle.size(); }
+	public int getWaitingCount() { return waiting.get(); }
+	public long getBorrowCount() { return borrows.get(); }
+	public long getTimeOutCount() { return timeOuts.get(); }
+	public long getTotalWaitTime() { return TimeUnit.NANOSECONDS.toMillis(waitNanos.get()); }
+
+	public synchronized void open() throws Exception {
+		if(isOpen)
+			throw new Exception("The pool is already open!");
+		if(maximumSize < 1)
+			throw new Exception("Maximum size must be at least one!");
+		if(minimumIdle > maximumSize)
+			throw new Exception("Minimum idle cannot exceed maximum size!");
+
+		permits = new Semaphore(maximumSize, true);
+		isOpen = true;
+		try {
+			fillMinimumIdle();
+		}
+		catch(Exception ex) {
+			close();
+			throw ex;
+		}
+
+		long period = Math.max(1000, idleTimeOut / 2);
+		evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "connection-pool-evictor");
+			thread.setDaemon(true);
+			return thread;
+		});
+		evictor.scheduleWithFixedDelay(this::evict, period, period, TimeUnit.MILLISECONDS);
+	}
+	public synchronized void close() throws Exception {
+		isOpen = false;
+		if(evictor != null) {
+			evictor.shutdownNow();
+			evictor = null;
+		}
+
+		Entry entry;
+		while((entry = idle.pollFirst()) != null)
+			discard(entry.adapter);
+	}
+
+	public Connection create() {
+		return new ConnectionImp(new PooledAdapter(this));
+	}
+
+	/**
+	 * Waits up to the maximum wait for a permit, then hands out the most
+	 * recently used idle adapter that is still valid, or opens a new one.
+	 */
+	Adapter borrow() throws Exception {
+		if(!isOpen)
+			throw new Exception("The pool is not open!");
+
+		Semaphore permits = this.permits;
+		long start = System.nanoTime();
+		boolean acquired;
+		waiting.incrementAndGet();
+		try {
+			acquired = permits.tryAcquire(maximumWait, TimeUnit.MILLISECONDS);
+		}
+		finally {
+			waiting.decrementAndGet();
+			waitNanos.addAndGet(System.nanoTime() - start);
+		}
+		if(!acquired) {
+			timeOuts.incrementAndGet();
+			throw new Exception("Timed out waiting " + maximumWait + " milliseconds for a pooled connection!");
+		}
+
+		try {
+			Entry entry;
+			while((entry = idle.pollFirst()) != null) {
+				if(System.nanoTime() - entry.lastUsed < VALIDATION_BYPASS_NANOS || entry.adapter.isValid(timeOut))
+					return activate(entry.adapter, permits);
+				discard(entry.adapter);
+			}
+			return activate(openAdapter(), permits);
+		}
+		catch(Exception ex) {
+			permits.release();
+			throw ex;
+		}
+	}
+	private Adapter activate(Adapter adapter, Semaphore permits) {
+		leases.put(adapter, permits);
+		active.incrementAndGet();
+		borrows.incrementAndGet();
+		return adapter;
+	}
+	/**
+	 * Returns a borrowed adapter to the front of the idle queue, or closes it
+	 * when it is broken or the pool has been closed or reopened since it was
+	 * borrowed.  The permit goes back to the semaphore it was taken from.
+	 */
+	void release(Adapter adapter, boolean isBroken) {
+		Semaphore lease = leases.remove(adapter);
+		active.decrementAndGet();
+		if(isOpen && !isBroken && lease == permits)
+			idle.offerFirst(new Entry(adapter));
+		else
+			discard(adapter);
+		if(lease != null)
+			lease.release();
+	}
+
+	private Adapter openAdapter() throws Exception {
+		Adapter adapter = adapterFactory.create();
+		adapter.setServer(server);
+		adapter.setPort(port);
+		adapter.setDatabase(database);
+		adapter.setUser(user);
+		adapter.setPassword(password);
+		adapter.setTimeOut(timeOut);
+		adapter.setStatementCacheSize(statementCacheSize);
+		adapter.open();
+		return adapter;
+	}
+	private void discard(Adapter adapter) {
+		try { adapter.close(); }
+		catch(Exception ex) { /* do nothing */ }
+	}
+	private void fillMinimumIdle() throws Exception {
+		while(isOpen && idle.size() + active.get() < minimumIdle) {
+			if(!permits.tryAcquire())
+				return;
+			try {
+				idle.offerLast(new Entry(openAdapter()));
+			}
+			finally {
+				permits.release();
+			}
+		}
+	}
+	/**
+	 * Closes the least recently used adapters that have been idle longer than
+	 * the idle time out, keeping the minimum idle adapters open.
+	 */
+	private void evict() {
+		long now = System.nanoTime();
+		long limit = TimeUnit.MILLISECONDS.toNanos(idleTimeOut);
+
+		Iterator<Entry> iterator = idle.descendingIterator();
+		while(iterator.hasNext()) {
+			Entry entry = iterator.next();
+			if(idle.size() + active.get() <= minimumIdle)
+				break;
+			if(now - entry.lastUsed < limit)
+				break;
+			if(idle.removeLastOccurrence(entry))
+				discard(entry.adapter);
+		}
+
+		try { fillMinimumIdle(); }
+		catch(Exception ex) { /* retried on the next run */ }
+	}
+}
@@ -0,0 +1,240 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.CommitRule;
+import com.lagovistatech.database.Connection;
+import com.lagovistatech.database.GuidFactory;
+import com.lagovistatech.database.ParallelSaver;
+import com.lagovistatech.database.PartitionRule;
+import com.lagovistatech.database.PreparedTransactionException;
+import com.lagovistatech.database.Row;
+import com.lagovistatech.database.Table;
+import com.lagovistatech.database.VersionedRow;
+
+public class ParallelSaverImp implements ParallelSaver {
+	public ParallelSaverImp(Factory<Connection> connections) {
+		this.connections = connections;
+	}
+
+	private Factory<Connection> connections;
+
+	private int partitionCount = 4;
+	public int getPartitionCount() { return partitionCount; }
+	public void setPartitionCount(int value) { partitionCount = value; }
+
+	private int minimumPartitionSize = 1000;
+	public int getMinimumPartitionSize() { return minimumPartitionSize; }
+	public void setMinimumPartitionSize(int value) { minimumPartitionSize = value; }
+
+	private PartitionRule partitionRule = PartitionRule.Hash;
+	public PartitionRule getPartitionRule() { return partitionRule; }
+	public void setPartitionRule(PartitionRule value) { partitionRule = value; }
+
+	private CommitRule commitRule = CommitRule.PerPartition;
+	public CommitRule getCommitRule() { return commitRule; }
+	public void setCommitRule(CommitRule value) { commitRule = value; }
+
+	private static final Comparator<Row> byGuid = Comparator.comparing(row -> ((VersionedRow) row).getGuid());
+
+	/**
+	 * Splits the rows into partitions, each in GUID order, giving new rows a
+	 * GUID so they can be partitioned.
+	 */
+	private <R extends Row> List<List<R>> partition(List<R> rows) throws Exception {
+		for(R row : rows) {
+			if(!(row instanceof VersionedRow))
+				throw new Exception("Only versioned rows can be saved in parallel!");
+
+			VersionedRow versioned = (VersionedRow) row;
+			if(versioned.getGuid() == null)
+				versioned.setGuid(GuidFactory.instanciate());
+		}
+
+		int count = Math.max(1, Math.min(partitionCount, rows.size() / Math.max(1, minimumPartitionSize)));
+		List<List<R>> ret = new ArrayList<List<R>>();
+		if(partitionRule == PartitionRule.Range) {
+			rows.sort(byGuid);
+			int size = (rows.size() + count - 1) / count;
+			for(int start = 0; start < rows.size(); start += size)
+				ret.add(rows.subList(start, Math.min(start + size, rows.size())));
+		}
+		else {
+			for(int cnt = 0; cnt < count; cnt++)
+				ret.add(new ArrayList<R>());
+			for(R row : rows)
+				ret.get(Math.floorMod(((VersionedRow) row).getGuid().hashCode(), count)).add(row);
+			for(List<R> partition : ret)
+				partition.sort(byGuid);
+			ret.removeIf(List::isEmpty);
+		}
+		return ret;
+	}
+
+	private ConnectionImp open() throws Exception {
+		Connection ret = connections.create();
+		if(!(ret instanceof ConnectionImp))
+			throw new Exception("Parallel saves require plain connections, such as from a connection pool!");
+
+		ret.open();
+		return (ConnectionImp) ret;
+	}
+
+	/**
+	 * Attempts made to commit each prepared transaction.
+	 */
+	private static final int COMMIT_ATTEMPTS = 3;
+	/**
+	 * Commits a prepared transaction, retrying on new connections since any
+	 * session may commit it.
+	 */
+	private void commitPrepared(ConnectionImp connection, String id) throws Exception {
+		Exception error = null;
+		for(int attempt = 0; attempt < COMMIT_ATTEMPTS; attempt++) {
+			if(attempt > 0)
+				Thread.sleep(100L * attempt);
+			
+			try {
+				if(attempt == 0)
+					connection.execute("COMMIT PREPARED '" + id + "'");
+				else {
+					ConnectionImp retry = open();
+					try {
+						retry.execute("COMMIT PREPARED '" + id + "'");
+					}
+					finally {
+						retry.close();
+					}
+				}
+				return;
+			}
+			catch(Exception ex) {
+				if(error == null)
+					error = ex;
+				else
+					error.addSuppressed(ex);
+			}
+		}
+		throw error;
+	}
+
+	public <R extends Row> long save(Table<R> table) throws Exception {
+		List<List<R>> partitions = partition(table.getDirtyRows());
+		int count = partitions.size();
+		ConnectionImp[] opened = new ConnectionImp[count];
+		WriteBack[] writeBacks = new WriteBack[count];
+		String[] prepared = new String[count];
+		boolean[] isCommitted = new boolean[count];
+		boolean isTwoPhase = commitRule == CommitRule.TwoPhase;
+
+		List<Callable<Long>> saves = new ArrayList<Callable<Long>>();
+		for(int cnt = 0; cnt < count; cnt++) {
+			int index = cnt;
+			saves.add(() -> {
+				ConnectionImp connection = open();
+				opened[index] = connection;
+				WriteBack writeBack = new WriteBack();
+				if(!isTwoPhase) {
+					long ret = connection.save(partitions.get(index), writeBack);
+					writeBacks[index] = writeBack;
+					isCommitted[index] = true;
+					return ret;
+				}
+
+				String id = "parallel-save-" + UUID.randomUUID();
+				connection.begin();
+				try {
+					long ret = connection.save(partitions.get(index), writeBack);
+					connection.execute("PREPARE TRANSACTION '" + id + "'");
+					prepared[index] = id;
+					// the prepared transaction no longer belongs to the session
+					connection.commit();
+					writeBacks[index] = writeBack;
+					return ret;
+				}
+				catch(Exception ex) {
+					if(prepared[index] == null)
+						connection.rollback();
+					throw ex;
+				}
+			});
+		}
+
+		try {
+			long ret = 0;
+			try {
+				for(long rows : Workers.invokeAll(saves))
+					ret += rows;
+			}
+			catch(Exception ex) {
+				for(int cnt = 0; cnt < count; cnt++) {
+					if(prepared[cnt] == null)
+						continue;
+					try {
+						opened[cnt].execute("ROLLBACK PREPARED '" + prepared[cnt] + "'");
+					}
+					catch(Exception rollback) {
+						ex.addSuppressed(rollback);
+					}
+				}
+				throw ex;
+			}
+
+			if(isTwoPhase) {
+				List<Callable<Void>> commits = new ArrayList<Callable<Void>>();
+				for(int cnt = 0; cnt < count; cnt++) {
+					int index = cnt;
+					commits.add(() -> {
+						commitPrepared(opened[index], prepared[index]);
+						isCommitted[index] = true;
+						return null;
+					});
+				}
+				try {
+					Workers.invokeAll(commits);
+				}
+				catch(Exception ex) {
+					List<String> uncommitted = new ArrayList<String>();
+					for(int cnt = 0; cnt < count; cnt++)
+						if(!isCommitted[cnt])
+							uncommitted.add(prepared[cnt]);
+					throw new PreparedTransactionException("Prepared transactions could not be committed!", uncommitted, ex);
+				}
+			}
+
+			return ret;
+		}
+		finally {
+			for(int cnt = 0; cnt < count; cnt++)
+				if(isCommitted[cnt])
+					writeBacks[cnt].apply(table);
+
+			for(ConnectionImp connection : opened)
+				if(connection != null)
+					connection.close();
+		}
+	}
+}
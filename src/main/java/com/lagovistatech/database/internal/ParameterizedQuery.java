@@ -0,0 +1,216 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.lagovistatech.database.Adapter;
+import com.lagovistatech.database.Parameters;
+
+/**
+ * A parameterized query is SQL where the named parameters have been replaced
+ * with positional JDBC placeholders.  Compiled queries are cached by SQL text
+ * and parameter names, so repeated statements are only scanned once.
+ */
+public class ParameterizedQuery {
+	private static final int CACHE_SIZE = 256;
+	private static final Map<String, ParameterizedQuery> cache = Collections.synchronizedMap(
+		new LinkedHashMap<String, ParameterizedQuery>(CACHE_SIZE, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			protected boolean removeEldestEntry(Map.Entry<String, ParameterizedQuery> eldest) {
+				return size() > CACHE_SIZE;
+			}
+		}
+	);
+
+	/**
+	 * Compiles the SQL, replacing each occurrence of a parameter name outside
+	 * of literals, quoted identifiers, and comments with a placeholder.
+	 * 
+	 * @param sql SQL query containing named parameters.
+	 * @param names Names of the parameters.
+	 * @return The compiled query.
+	 */
+	public static ParameterizedQuery compile(String sql, Set<String> names) {
+		String[] sorted = names.toArray(new String[0]);
+		Arrays.sort(sorted);
+
+		String key = String.join("\u0000", sorted) + "\u0000" + sql;
+		ParameterizedQuery ret = cache.get(key);
+		if(ret == null) {
+			ret = new ParameterizedQuery(sql, sorted);
+			cache.put(key, ret);
+		}
+		return ret;
+	}
+
+	private ParameterizedQuery(String sql, String[] names) {
+		// longest names first so "@GuidList" is not matched as "@Guid"
+		String[] byLength = names.clone();
+		Arrays.sort(byLength, (a, b) -> b.length() - a.length());
+		
+		StringBuilder ret = new StringBuilder(sql.length());
+		StringBuilder literal = new StringBuilder(sql.length());
+		List<String> order = new ArrayList<String>();
+		List<String> segments = new ArrayList<String>();
+		
+		int index = 0;
+		while(index < sql.length()) {
+			int end = skipQuoted(sql, index);
+			if(end > index) {
+				ret.append(sql, index, end);
+				literal.append(sql, index, end);
+				index = end;
+				continue;
+			}
+			
+			String match = null;
+			for(String name : byLength)
+				if(name.length() > 0 && sql.startsWith(name, index)) {
+					match = name;
+					break;
+				}
+			
+			if(match != null) {
+				ret.append('?');
+				order.add(match);
+				segments.add(literal.toString());
+				literal.setLength(0);
+				index += match.length();
+			}
+			else {
+				char ch = sql.charAt(index);
+				// a bare question mark would be taken as a placeholder by JDBC
+				if(ch == '?')
+					ret.append("??");
+				else
+					ret.append(ch);
+				literal.append(ch);
+				index++;
+			}
+		}
+		
+		this.sql = ret.toString();
+		this.names = order.toArray(new String[0]);
+		segments.add(literal.toString());
+		this.segments = segments.toArray(new String[0]);
+	}
+	
+	/**
+	 * @return Index after the literal, quoted identifier, or comment starting
+	 * at the index; or the index when none starts there.
+	 */
+	private static int skipQuoted(String sql, int index) {
+		char ch = sql.charAt(index);
+		char next = index + 1 < sql.length() ? sql.charAt(index + 1) : 0;
+		
+		if(ch == '\'') {
+			boolean isEscaped = index > 0 && (sql.charAt(index - 1) == 'E' || sql.charAt(index - 1) == 'e');
+			return skipTo(sql, index + 1, '\'', isEscaped);
+		}
+		if(ch == '"')
+			return skipTo(sql, index + 1, '"', false);
+		if(ch == '-' && next == '-') {
+			int end = sql.indexOf('\n', index);
+			return end < 0 ? sql.length() : end + 1;
+		}
+		if(ch == '/' && next == '*') {
+			int depth = 0;
+			int cnt = index;
+			while(cnt < sql.length() - 1) {
+				if(sql.charAt(cnt) == '/' && sql.charAt(cnt + 1) == '*') {
+					depth++;
+					cnt += 2;
+				}
+				else if(sql.charAt(cnt) == '*' && sql.charAt(cnt + 1) == '/') {
+					depth--;
+					cnt += 2;
+					if(depth == 0)
+						return cnt;
+				}
+				else
+					cnt++;
+			}
+			return sql.length();
+		}
+		if(ch == '$') {
+			int close = sql.indexOf('$', index + 1);
+			if(close < 0)
+				return index;
+			String tag = sql.substring(index, close + 1);
+			if(!tag.matches("\\$([A-Za-z_][A-Za-z_0-9]*)?\\$"))
+				return index;
+			int end = sql.indexOf(tag, close + 1);
+			return end < 0 ? sql.length() : end + tag.length();
+		}
+		
+		return index;
+	}
+	private static int skipTo(String sql, int index, char quote, boolean isEscaped) {
+		int cnt = index;
+		while(cnt < sql.length()) {
+			char ch = sql.charAt(cnt);
+			if(isEscaped && ch == '\\')
+				cnt += 2;
+			else if(ch == quote && cnt + 1 < sql.length() && sql.charAt(cnt + 1) == quote)
+				cnt += 2;
+			else if(ch == quote)
+				return cnt + 1;
+			else
+				cnt++;
+		}
+		return sql.length();
+	}
+
+	private String sql;
+	/**
+	 * @return SQL with positional placeholders.
+	 */
+	public String getSql() { return sql; }
+	
+	private String[] names;
+	/**
+	 * @return Parameter names in placeholder order.
+	 */
+	public String[] getNames() { return names; }
+	
+	private String[] segments;
+	/**
+	 * For statements that cannot bind values, such as COPY.
+	 * 
+	 * @param adapter Adapter to convert values to literals.
+	 * @param params Values of the parameters.
+	 * @return SQL with each parameter replaced by a literal.
+	 * @throws Exception Values that could not be converted.
+	 */
+	public String toLiteralSql(Adapter adapter, Parameters params) throws Exception {
+		StringBuilder ret = new StringBuilder(segments[0]);
+		for(int cnt = 0; cnt < names.length; cnt++) {
+			ret.append(adapter.objectToSql(params.get(names[cnt])));
+			ret.append(segments[cnt + 1]);
+		}
+		return ret.toString();
+	}
+}
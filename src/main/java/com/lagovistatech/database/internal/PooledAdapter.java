@@ -0,0 +1,180 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.lagovistatech.database.Adapter;
+import com.lagovistatech.database.Parameters;
+import com.lagovistatech.database.SaveCommand;
+import com.lagovistatech.database.Table;
+import com.lagovistatech.database.UpsertRule;
+
+/**
+ * The pooled adapter borrows an opened adapter from the pool when opened and
+ * hands it back when closed.  Connection properties belong to the pool, so
+ * setting them here is ignored.
+ */
+public class PooledAdapter implements Adapter {
+	public PooledAdapter(ConnectionPoolImp pool) {
+		this.pool = pool;
+	}
+
+	private ConnectionPoolImp pool;
+	private Adapter adapter;
+	private Adapter getOpened() throws Exception {
+		if(adapter == null)
+			throw new Exception("The connection is not open!");
+
+		return adapter;
+	}
+
+	public String getServer() { return pool.getServer(); }
+	public void setServer(String server) { /* configured by the pool */ }
+
+	public int getPort() { return pool.getPort(); }
+	public void setPort(int port) { /* configured by the pool */ }
+
+	public String getDatabase() { return pool.getDatabase(); }
+	public void setDatabase(String database) { /* configured by the pool */ }
+
+	public String getUser() { return pool.getUser(); }
+	public void setUser(String user) { /* configured by the pool */ }
+
+	public int getTimeOut() { return pool.getTimeOut(); }
+	public void setTimeOut(int timeOut) { /* configured by the pool */ }
+
+	public void setPassword(String password) { /* configured by the pool */ }
+
+	public void open() throws Exception {
+		if(adapter != null)
+			throw new Exception("The connection is already open!");
+
+		adapter = pool.borrow();
+		adapter.setFetchSize(fetchSize);
+		adapter.setBatchSize(batchSize);
+		adapter.setMaximumInsertRows(maximumInsertRows);
+	}
+	public void close() throws Exception {
+		if(adapter == null)
+			return;
+
+		Adapter borrowed = adapter;
+		adapter = null;
+		boolean isBroken = false;
+		try {
+			if(borrowed.isInTransaction())
+				borrowed.rollback();
+		}
+		catch(Exception ex) {
+			isBroken = true;
+			throw ex;
+		}
+		finally {
+			pool.release(borrowed, isBroken);
+		}
+	}
+	public boolean isValid(int timeOut) throws Exception {
+		if(adapter == null)
+			return false;
+
+		return adapter.isValid(timeOut);
+	}
+
+	public void begin() throws Exception { getOpened().begin(); }
+	public void commit() throws Exception { getOpened().commit(); }
+	public void rollback() throws Exception { getOpened().rollback(); }
+	public boolean isInTransaction() { return adapter != null && adapter.isInTransaction(); }
+
+	private int batchSize = 1000;
+	public int getBatchSize() { return batchSize; }
+	public void setBatchSize(int value) {
+		batchSize = value;
+		if(adapter != null)
+			adapter.setBatchSize(value);
+	}
+	public long[] executeBatch(String sql, List<List<Object>> values) throws Exception { return getOpened().executeBatch(sql, values); }
+
+	public long copyIn(String tableName, List<String> columns, List<List<Object>> values) throws Exception { return getOpened().copyIn(tableName, columns, values); }
+	public ResultSetMetaData describe(String sql, Parameters params) throws Exception { return getOpened().describe(sql, params); }
+	public InputStream copyOut(String sql, Parameters params) throws Exception { return getOpened().copyOut(sql, params); }
+	public ResultSet fillByKeys(String tableName, String keyColumn, Object[] keys) throws Exception { return getOpened().fillByKeys(tableName, keyColumn, keys); }
+	public void executeReturning(List<SaveCommand> commands, ReturningReader reader) throws Exception { getOpened().executeReturning(commands, reader); }
+	public Map<UUID, Long> updateVersioned(Table<?> table, Set<String> columns, List<Map<String, Object>> rows) throws Exception { return getOpened().updateVersioned(table, columns, rows); }
+	public Map<UUID, Long> upsertVersioned(Table<?> table, Set<String> columns, List<Map<String, Object>> rows, UpsertRule rule) throws Exception { return getOpened().upsertVersioned(table, columns, rows, rule); }
+
+	private int maximumInsertRows = 1000;
+	public int getMaximumInsertRows() { return maximumInsertRows; }
+	public void setMaximumInsertRows(int value) {
+		maximumInsertRows = value;
+		if(adapter != null)
+			adapter.setMaximumInsertRows(value);
+	}
+	public List<SaveCommand> coalesce(List<SaveCommand> commands) throws Exception { return getOpened().coalesce(commands); }
+
+	private int fetchSize = 1000;
+	public int getFetchSize() { return fetchSize; }
+	public void setFetchSize(int value) {
+		fetchSize = value;
+		if(adapter != null)
+			adapter.setFetchSize(value);
+	}
+	public ResultSet stream(String sql, Parameters params) throws Exception { return getOpened().stream(sql, params); }
+
+	public String objectToSql(Object value) throws Exception { return getOpened().objectToSql(value); }
+
+	public long execute(String sql) throws Exception { return getOpened().execute(sql); }
+	public ResultSet fill(String sql) throws Exception { return getOpened().fill(sql); }
+	public long execute(String sql, Parameters params) throws Exception { return getOpened().execute(sql, params); }
+	public ResultSet fill(String sql, Parameters params) throws Exception { return getOpened().fill(sql, params); }
+
+	public int getStatementCacheSize() { return pool.getStatementCacheSize(); }
+	public void setStatementCacheSize(int value) { /* configured by the pool */ }
+	public long getStatementCacheHits() { return adapter == null ? 0 : adapter.getStatementCacheHits(); }
+	public long getStatementCacheMisses() { return adapter == null ? 0 : adapter.getStatementCacheMisses(); }
+	public long getStatementCacheEvictions() { return adapter == null ? 0 : adapter.getStatementCacheEvictions(); }
+
+	public String quoteIdentifier(String identifier) throws Exception { return getOpened().quoteIdentifier(identifier); }
+	public String quoteLiteral(String literal) throws Exception { return getOpened().quoteLiteral(literal); }
+
+	public String generateSave(Table<?> table, Map<String, Object> originals, Map<String, Object> changes, boolean isDel) throws Exception {
+		return getOpened().generateSave(table, originals, changes, isDel);
+	}
+	public String generateSave(Table<?> table, Map<String, Object> values, boolean isDel) throws Exception {
+		return getOpened().generateSave(table, values, isDel);
+	}
+	public SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> originals, Map<String, Object> changes, boolean isDel) throws Exception {
+		return getOpened().generateSaveCommand(table, originals, changes, isDel);
+	}
+	public SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> values, boolean isDel) throws Exception {
+		return getOpened().generateSaveCommand(table, values, isDel);
+	}
+	public String generateSave(Table<?> table, Map<String, Object> values, Set<String> modified, boolean isDel) throws Exception {
+		return getOpened().generateSave(table, values, modified, isDel);
+	}
+	public SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> values, Set<String> modified, boolean isDel) throws Exception {
+		return getOpened().generateSaveCommand(table, values, modified, isDel);
+	}
+}
@@ -18,18 +18,37 @@
 */
 package com.lagovistatech.database.internal;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.Statement;
+import java.sql.Types;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
 
 import org.apache.commons.codec.binary.Hex;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.PGCopyInputStream;
 
-import com.lagovistatech.Guid;
 import com.lagovistatech.Helpers;
 import com.lagovistatech.database.Adapter;
+import com.lagovistatech.database.GuidFactory;
+import com.lagovistatech.database.Parameters;
+import com.lagovistatech.database.SaveCommand;
 import com.lagovistatech.database.Table;
+import com.lagovistatech.database.UpsertRule;
 import com.lagovistatech.database.VersionedRow;
 
 public class PostgresAdapter implements Adapter {
@@ -137,27 +156,666 @@ public class PostgresAdapter implements Adapter {
 		Class.forName("org.postgresql.Driver");
 		String jdbc = "jdbc:postgresql://" + server + ":" + port + "/" + database;
 		DriverManager.setLoginTimeout(timeOut);
-		connection = DriverManager.getConnection(jdbc, user, password);	
+		
+		Properties props = new Properties();
+		props.setProperty("user", user);
+		props.setProperty("password", password);
+		// bound strings are typed by the server like the literals they replace
+		props.setProperty("stringtype", "unspecified");
+		connection = DriverManager.getConnection(jdbc, props);	
 		quoteStatement = connection.createStatement();
 	}
 	public void close() throws Exception {
+		statementCache.close();
 		quoteStatement = null;
 		try { connection.close(); }
 		catch(Exception ex) { /* do nothing */ }
 		connection = null;
 	}
+	public void begin() throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		connection.setAutoCommit(false);
+	}
+	public void commit() throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		try { connection.commit(); }
+		finally { connection.setAutoCommit(true); }
+	}
+	public void rollback() throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		try { connection.rollback(); }
+		finally { connection.setAutoCommit(true); }
+	}
+	public boolean isInTransaction() {
+		try { return connection != null && !connection.getAutoCommit(); }
+		catch(Exception ex) { return false; }
+	}
+	public boolean isValid(int timeOut) throws Exception {
+		if(connection == null)
+			return false;
+		
+		return connection.isValid(timeOut);
+	}
 
 	public long execute(String processed) throws Exception {
-		Statement stmt = connection.createStatement();
-		stmt.setQueryTimeout(timeOut);
-		return stmt.executeLargeUpdate(processed);
+		try(Statement stmt = connection.createStatement()) {
+			stmt.setQueryTimeout(timeOut);
+			return stmt.executeLargeUpdate(processed);
+		}
 	}
 	public ResultSet fill(String processed) throws Exception {
-		Statement stmt = connection.createStatement();
+		// scrollable so fills can size their table before reading
+		Statement stmt = connection.createStatement(ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
 		stmt.setQueryTimeout(timeOut);
+		stmt.closeOnCompletion();
 		return stmt.executeQuery(processed);
 	}
 
+	private int fetchSize = 1000;
+	public int getFetchSize() { return fetchSize; }
+	public void setFetchSize(int value) { fetchSize = value; }
+
+	public ResultSet stream(String sql, Parameters params) throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+		if(connection.getAutoCommit())
+			throw new Exception("Streaming requires a transaction!");
+
+		// not cached: the cursor stays open while other statements execute
+		ParameterizedQuery query = ParameterizedQuery.compile(sql, params.keySet());
+		PreparedStatement stmt = connection.prepareStatement(query.getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+		try {
+			stmt.setQueryTimeout(timeOut);
+			stmt.setFetchSize(fetchSize);
+			String[] names = query.getNames();
+			for(int cnt = 0; cnt < names.length; cnt++)
+				bind(stmt, cnt + 1, params.get(names[cnt]));
+			
+			stmt.closeOnCompletion();
+			return stmt.executeQuery();
+		}
+		catch(Exception ex) {
+			stmt.close();
+			throw ex;
+		}
+	}
+
+	private StatementCache statementCache = new StatementCache(64);
+	public int getStatementCacheSize() { return statementCache.getCapacity(); }
+	public void setStatementCacheSize(int value) { statementCache.setCapacity(value); }
+	public long getStatementCacheHits() { return statementCache.getHits(); }
+	public long getStatementCacheMisses() { return statementCache.getMisses(); }
+	public long getStatementCacheEvictions() { return statementCache.getEvictions(); }
+
+	public long execute(String sql, Parameters params) throws Exception {
+		PreparedStatement stmt = prepare(sql, params);
+		try {
+			return stmt.executeLargeUpdate();
+		}
+		finally {
+			if(!statementCache.isCaching())
+				stmt.close();
+		}
+	}
+	public ResultSet fill(String sql, Parameters params) throws Exception {
+		PreparedStatement stmt = prepare(sql, params);
+		if(!statementCache.isCaching())
+			stmt.closeOnCompletion();
+		return stmt.executeQuery();
+	}
+	private int batchSize = 1000;
+	public int getBatchSize() { return batchSize; }
+	public void setBatchSize(int value) { batchSize = value; }
+
+	public long[] executeBatch(String sql, List<List<Object>> values) throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		long[] ret = new long[values.size()];
+		PreparedStatement stmt = statementCache.prepare(connection, sql);
+		try {
+			stmt.setQueryTimeout(timeOut);
+			int start = 0;
+			while(start < values.size()) {
+				int end = Math.min(start + Math.max(batchSize, 1), values.size());
+				for(int row = start; row < end; row++) {
+					List<Object> rowValues = values.get(row);
+					for(int cnt = 0; cnt < rowValues.size(); cnt++)
+						bind(stmt, cnt + 1, rowValues.get(cnt));
+					stmt.addBatch();
+				}
+				
+				long[] counts = stmt.executeLargeBatch();
+				System.arraycopy(counts, 0, ret, start, counts.length);
+				start = end;
+			}
+		}
+		finally {
+			stmt.clearBatch();
+			if(!statementCache.isCaching())
+				stmt.close();
+		}
+		return ret;
+	}
+
+	public ResultSet fillByKeys(String tableName, String keyColumn, Object[] keys) throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+		if(keys.length < 1)
+			throw new Exception("At least one key is required!");
+		for(Object key : keys)
+			if(key.getClass() != keys[0].getClass())
+				throw new Exception("Keys must all be of the same type!");
+
+		String sql = "SELECT * FROM " + this.quoteIdentifier(tableName) + " WHERE " + this.quoteIdentifier(keyColumn) + "=ANY(?)";
+		PreparedStatement stmt = statementCache.prepare(connection, sql);
+		try {
+			stmt.setQueryTimeout(timeOut);
+			stmt.setArray(1, connection.createArrayOf(arrayTypeOf(keys[0]), keys));
+		}
+		catch(Exception ex) {
+			if(!statementCache.isCaching())
+				stmt.close();
+			throw ex;
+		}
+		if(!statementCache.isCaching())
+			stmt.closeOnCompletion();
+		return stmt.executeQuery();
+	}
+	/**
+	 * @return Element type of an array holding the key.
+	 */
+	private String arrayTypeOf(Object key) throws Exception {
+		switch(key.getClass().getCanonicalName()) {
+			case "java.util.UUID": return "uuid";
+			case "java.lang.Short": return "int2";
+			case "java.lang.Integer": return "int4";
+			case "java.lang.Long": return "int8";
+			case "java.math.BigDecimal": return "numeric";
+			case "java.lang.String": return "text";
+			default:
+				throw new Exception("Type '" + key.getClass().getCanonicalName() + "' is not supported as a key!");
+		}
+	}
+	public void executeReturning(List<SaveCommand> commands, ReturningReader reader) throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		int start = 0;
+		while(start < commands.size()) {
+			int end = start + 1;
+			int valueCount = commands.get(start).getValues().size();
+			while(end < commands.size() && valueCount + commands.get(end).getValues().size() <= MAXIMUM_BOUND_VALUES)
+				valueCount += commands.get(end++).getValues().size();
+			
+			executePipeline(commands.subList(start, end), reader);
+			start = end;
+		}
+	}
+	/**
+	 * Sends the commands as one multi-statement query; the driver pipelines
+	 * the statements and returns a result set for each.
+	 */
+	private void executePipeline(List<SaveCommand> commands, ReturningReader reader) throws Exception {
+		if(commands.size() == 1) {
+			SaveCommand command = commands.get(0);
+			PreparedStatement stmt = statementCache.prepare(connection, command.getSql() + " RETURNING *");
+			try {
+				stmt.setQueryTimeout(timeOut);
+				for(int cnt = 0; cnt < command.getValues().size(); cnt++)
+					bind(stmt, cnt + 1, command.getValues().get(cnt));
+				try(ResultSet rs = stmt.executeQuery()) {
+					reader.read(command, rs);
+				}
+			}
+			finally {
+				if(!statementCache.isCaching())
+					stmt.close();
+			}
+			return;
+		}
+		
+		StringBuilder sql = new StringBuilder();
+		for(SaveCommand command : commands)
+			sql.append(command.getSql()).append(" RETURNING *;\n");
+		
+		try(PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+			stmt.setQueryTimeout(timeOut);
+			int index = 1;
+			for(SaveCommand command : commands)
+				for(Object value : command.getValues())
+					bind(stmt, index++, value);
+			
+			stmt.execute();
+			for(SaveCommand command : commands) {
+				try(ResultSet rs = stmt.getResultSet()) {
+					reader.read(command, rs);
+				}
+				stmt.getMoreResults();
+			}
+		}
+	}
+
+	public ResultSetMetaData describe(String sql, Parameters params) throws Exception {
+		PreparedStatement stmt = prepare(sql, params);
+		try {
+			return stmt.getMetaData();
+		}
+		finally {
+			if(!statementCache.isCaching())
+				stmt.close();
+		}
+	}
+	public InputStream copyOut(String sql, Parameters params) throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		String query = ParameterizedQuery.compile(sql, params.keySet()).toLiteralSql(this, params);
+		return new PGCopyInputStream(connection.unwrap(PGConnection.class), "COPY (" + query + ") TO STDOUT (FORMAT binary)");
+	}
+
+	public Map<UUID, Long> updateVersioned(Table<?> table, Set<String> columns, List<Map<String, Object>> rows) throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		List<String> ordered = new ArrayList<String>();
+		ordered.add(VersionedRow.COLUMN_GUID);
+		ordered.add(VersionedRow.COLUMN_VERSION);
+		for(String column : new TreeSet<String>(columns))
+			if(!ordered.contains(column))
+				ordered.add(column);
+		
+		String[] casts = new String[ordered.size()];
+		for(int cnt = 0; cnt < casts.length; cnt++)
+			casts[cnt] = "::" + castType(table, ordered.get(cnt));
+		
+		Map<UUID, Long> ret = new LinkedHashMap<UUID, Long>();
+		int limit = Math.max(1, MAXIMUM_BOUND_VALUES / ordered.size());
+		for(int start = 0; start < rows.size(); start += limit) {
+			List<Map<String, Object>> chunk = rows.subList(start, Math.min(start + limit, rows.size()));
+			
+			StringBuilder sql = new StringBuilder();
+			sql.append("UPDATE " + this.quoteIdentifier(table.getTableName()) + " AS \"target\" SET ");
+			for(int cnt = 2; cnt < ordered.size(); cnt++)
+				sql.append(this.quoteIdentifier(ordered.get(cnt)) + "=\"source\"." + this.quoteIdentifier(ordered.get(cnt)) + ", ");
+			sql.append(this.quoteIdentifier(VersionedRow.COLUMN_VERSION) + "=\"source\"." + this.quoteIdentifier(VersionedRow.COLUMN_VERSION) + "+1");
+			sql.append(" FROM (VALUES ");
+			for(int row = 0; row < chunk.size(); row++) {
+				sql.append(row == 0 ? "(" : ", (");
+				for(int cnt = 0; cnt < casts.length; cnt++)
+					sql.append(cnt == 0 ? "" : ", ").append("?").append(row == 0 ? casts[cnt] : "");
+				sql.append(")");
+			}
+			sql.append(") AS \"source\" (");
+			for(int cnt = 0; cnt < ordered.size(); cnt++)
+				sql.append(cnt == 0 ? "" : ", ").append(this.quoteIdentifier(ordered.get(cnt)));
+			sql.append(") WHERE \"target\"." + this.quoteIdentifier(VersionedRow.COLUMN_GUID) + "=\"source\"." + this.quoteIdentifier(VersionedRow.COLUMN_GUID));
+			sql.append(" AND \"target\"." + this.quoteIdentifier(VersionedRow.COLUMN_VERSION) + "=\"source\"." + this.quoteIdentifier(VersionedRow.COLUMN_VERSION));
+			sql.append(" RETURNING \"target\"." + this.quoteIdentifier(VersionedRow.COLUMN_GUID) + ", \"target\"." + this.quoteIdentifier(VersionedRow.COLUMN_VERSION));
+			
+			PreparedStatement stmt = statementCache.prepare(connection, sql.toString());
+			try {
+				stmt.setQueryTimeout(timeOut);
+				int index = 1;
+				for(Map<String, Object> row : chunk)
+					for(String column : ordered)
+						bind(stmt, index++, row.get(column));
+				
+				try(ResultSet rs = stmt.executeQuery()) {
+					while(rs.next())
+						ret.put((UUID) rs.getObject(1), rs.getLong(2));
+				}
+			}
+			finally {
+				if(!statementCache.isCaching())
+					stmt.close();
+			}
+		}
+		return ret;
+	}
+	public Map<UUID, Long> upsertVersioned(Table<?> table, Set<String> columns, List<Map<String, Object>> rows, UpsertRule rule) throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		List<String> ordered = new ArrayList<String>();
+		for(String column : new TreeSet<String>(columns))
+			if(!column.equals(VersionedRow.COLUMN_GUID) && !column.equals(VersionedRow.COLUMN_VERSION))
+				ordered.add(column);
+		ordered.add(VersionedRow.COLUMN_GUID);
+		ordered.add(VersionedRow.COLUMN_VERSION);
+		
+		String quotedVersion = this.quoteIdentifier(VersionedRow.COLUMN_VERSION);
+		StringBuilder conflict = new StringBuilder(" ON CONFLICT (" + this.quoteIdentifier(VersionedRow.COLUMN_GUID) + ") ");
+		if(rule == UpsertRule.Ignore)
+			conflict.append("DO NOTHING");
+		else {
+			conflict.append("DO UPDATE SET ");
+			for(int cnt = 0; cnt < ordered.size() - 2; cnt++)
+				conflict.append(this.quoteIdentifier(ordered.get(cnt)) + "=EXCLUDED." + this.quoteIdentifier(ordered.get(cnt)) + ", ");
+			if(rule == UpsertRule.Versioned) {
+				conflict.append(quotedVersion + "=EXCLUDED." + quotedVersion);
+				conflict.append(" WHERE \"target\"." + quotedVersion + "=EXCLUDED." + quotedVersion + "-1");
+			}
+			else
+				conflict.append(quotedVersion + "=\"target\"." + quotedVersion + "+1");
+		}
+		conflict.append(" RETURNING " + this.quoteIdentifier(VersionedRow.COLUMN_GUID) + ", " + quotedVersion);
+		
+		StringBuilder columnsSql = new StringBuilder();
+		for(String column : ordered)
+			columnsSql.append(columnsSql.length() == 0 ? "" : ", ").append(this.quoteIdentifier(column));
+		
+		Map<UUID, Long> ret = new LinkedHashMap<UUID, Long>();
+		int limit = Math.max(1, Math.min(maximumInsertRows, MAXIMUM_BOUND_VALUES / ordered.size()));
+		for(int start = 0; start < rows.size(); start += limit) {
+			List<Map<String, Object>> chunk = rows.subList(start, Math.min(start + limit, rows.size()));
+			
+			StringBuilder sql = new StringBuilder();
+			sql.append("INSERT INTO " + this.quoteIdentifier(table.getTableName()) + " AS \"target\" (" + columnsSql + ") VALUES ");
+			for(int row = 0; row < chunk.size(); row++) {
+				sql.append(row == 0 ? "(" : ", (");
+				for(int cnt = 0; cnt < ordered.size(); cnt++)
+					sql.append(cnt == 0 ? "?" : ", ?");
+				sql.append(")");
+			}
+			sql.append(conflict);
+			
+			PreparedStatement stmt = statementCache.prepare(connection, sql.toString());
+			try {
+				stmt.setQueryTimeout(timeOut);
+				int index = 1;
+				for(Map<String, Object> row : chunk) {
+					for(String column : ordered) {
+						Object value = row.get(column);
+						if(column.equals(VersionedRow.COLUMN_VERSION))
+							value = (value == null ? 0 : Helpers.objectToLong(value)) + 1;
+						bind(stmt, index++, value);
+					}
+				}
+				
+				try(ResultSet rs = stmt.executeQuery()) {
+					while(rs.next())
+						ret.put((UUID) rs.getObject(1), rs.getLong(2));
+				}
+			}
+			finally {
+				if(!statementCache.isCaching())
+					stmt.close();
+			}
+		}
+		return ret;
+	}
+	/**
+	 * @return Type the column's values are cast to in a values list, from the
+	 * table's schema.
+	 */
+	private String castType(Table<?> table, String column) throws Exception {
+		String typeName = table.getSchema() == null ? null : table.getSchema().get(column);
+		if(typeName == null)
+			throw new Exception("The type of column '" + column + "' is unknown!");
+		
+		switch(typeName) {
+			case "smallserial": return "int2";
+			case "serial": return "int4";
+			case "bigserial": return "int8";
+			default: return this.quoteIdentifier(typeName);
+		}
+	}
+
+	/**
+	 * Number of characters buffered before they are written to the server.
+	 */
+	private static final int COPY_BUFFER_SIZE = 65536;
+
+	public long copyIn(String tableName, List<String> columns, List<List<Object>> values) throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		String columnsSql = "";
+		for(String column : columns) {
+			if(columnsSql.length() > 0)
+				columnsSql += ", ";
+			columnsSql += this.quoteIdentifier(column);
+		}
+		String sql = "COPY " + this.quoteIdentifier(tableName) + " (" + columnsSql + ") FROM STDIN";
+		
+		CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+		try {
+			StringBuilder buffer = new StringBuilder();
+			for(List<Object> row : values) {
+				for(int cnt = 0; cnt < row.size(); cnt++) {
+					if(cnt > 0)
+						buffer.append('\t');
+					appendCopyText(buffer, row.get(cnt));
+				}
+				buffer.append('\n');
+				
+				if(buffer.length() >= COPY_BUFFER_SIZE) {
+					writeToCopy(copy, buffer);
+					buffer.setLength(0);
+				}
+			}
+			writeToCopy(copy, buffer);
+			return copy.endCopy();
+		}
+		finally {
+			if(copy.isActive())
+				copy.cancelCopy();
+		}
+	}
+	private void writeToCopy(CopyIn copy, StringBuilder buffer) throws Exception {
+		byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+		if(bytes.length > 0)
+			copy.writeToCopy(bytes, 0, bytes.length);
+	}
+	/**
+	 * Appends a value in the COPY text format, matching the literals produced
+	 * by objectToSql.
+	 */
+	private void appendCopyText(StringBuilder buffer, Object value) throws Exception {
+		if(value == null) {
+			buffer.append("\\N");
+			return;
+		}
+		
+		String text;
+		SimpleDateFormat sdf;
+		switch(value.getClass().getCanonicalName()) {
+			case "byte[]":
+				text = "\\x" + Hex.encodeHexString(Helpers.objectToBytes(value));
+				break;
+			case "java.lang.Boolean":
+				text = Helpers.objectToBoolean(value) ? "t" : "f";
+				break;
+			case "java.util.UUID":
+			case "java.lang.Integer":
+			case "java.lang.Long":
+			case "java.lang.Double":
+			case "java.lang.Float":
+			case "java.math.BigDecimal":
+				text = value.toString();
+				break;
+			case "java.util.Date":
+				sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS Z");
+				text = sdf.format((java.util.Date) value);
+				break;
+			case "java.sql.Time":
+				sdf = new SimpleDateFormat("HH:mm:ss.SSS Z");
+				text = sdf.format((java.sql.Time) value);
+				break;
+			case "java.sql.Date":
+			case "java.sql.Timestamp":
+			case "java.lang.String":
+				text = value.toString().trim();
+				break;
+			default:
+				throw new Exception("Type '" + value.getClass().getCanonicalName() + " is not supported!");
+		}
+		
+		for(int cnt = 0; cnt < text.length(); cnt++) {
+			char c = text.charAt(cnt);
+			switch(c) {
+				case '\\': buffer.append("\\\\"); break;
+				case '\t': buffer.append("\\t"); break;
+				case '\n': buffer.append("\\n"); break;
+				case '\r': buffer.append("\\r"); break;
+				default: buffer.append(c);
+			}
+		}
+	}
+
+	/**
+	 * The most values a single statement can bind.
+	 */
+	private static final int MAXIMUM_BOUND_VALUES = 32767;
+	
+	private int maximumInsertRows = 1000;
+	public int getMaximumInsertRows() { return maximumInsertRows; }
+	public void setMaximumInsertRows(int value) { maximumInsertRows = value; }
+
+	public List<SaveCommand> coalesce(List<SaveCommand> commands) throws Exception {
+		List<SaveCommand> ret = new ArrayList<SaveCommand>(commands.size());
+		List<SaveCommand> run = new ArrayList<SaveCommand>();
+		for(SaveCommand command : commands) {
+			// a row may depend on the rows before it, such as by foreign key
+			if(!run.isEmpty() && (command.getKind() != SaveCommand.Kind.Insert || !command.getFragments().equals(run.get(0).getFragments()))) {
+				combineRun(run, ret);
+				run.clear();
+			}
+			
+			if(command.getKind() == SaveCommand.Kind.Insert)
+				run.add(command);
+			else
+				ret.add(command);
+		}
+		combineRun(run, ret);
+		
+		return ret;
+	}
+	/**
+	 * Adds consecutive inserts of the same shape, combined as far as the
+	 * limits allow.
+	 */
+	private void combineRun(List<SaveCommand> run, List<SaveCommand> ret) {
+		if(run.isEmpty())
+			return;
+		
+		int valueCount = run.get(0).getValues().size();
+		int limit = Math.max(1, Math.min(maximumInsertRows, MAXIMUM_BOUND_VALUES / Math.max(valueCount, 1)));
+		for(int start = 0; start < run.size(); start += limit)
+			ret.add(combineInserts(run.subList(start, Math.min(start + limit, run.size()))));
+	}
+	/**
+	 * Combines inserts with the same fragments into a single multi-row insert by
+	 * joining each row's value list.
+	 */
+	private SaveCommand combineInserts(List<SaveCommand> shape) {
+		if(shape.size() == 1)
+			return shape.get(0);
+		
+		List<String> first = shape.get(0).getFragments();
+		int last = first.size() - 1;
+		
+		List<String> fragments = new ArrayList<String>();
+		List<Object> values = new ArrayList<Object>();
+		fragments.addAll(first.subList(0, last));
+		for(int cnt = 1; cnt < shape.size(); cnt++) {
+			fragments.add(first.get(last) + ", (");
+			fragments.addAll(first.subList(1, last));
+		}
+		fragments.add(first.get(last));
+
+		for(SaveCommand command : shape)
+			values.addAll(command.getValues());
+		
+		SaveCommand ret = new SaveCommand(SaveCommand.Kind.Insert, fragments, values);
+		ret.getColumns().addAll(shape.get(0).getColumns());
+		for(SaveCommand command : shape)
+			ret.getRows().addAll(command.getRows());
+		return ret;
+	}
+
+	private PreparedStatement prepare(String sql, Parameters params) throws Exception {
+		if(connection == null)
+			throw new Exception("The connection is not open!");
+
+		ParameterizedQuery query = ParameterizedQuery.compile(sql, params.keySet());
+		
+		PreparedStatement stmt = statementCache.prepare(connection, query.getSql());
+		try {
+			stmt.setQueryTimeout(timeOut);
+			String[] names = query.getNames();
+			for(int cnt = 0; cnt < names.length; cnt++)
+				bind(stmt, cnt + 1, params.get(names[cnt]));
+		}
+		catch(Exception ex) {
+			if(!statementCache.isCaching())
+				stmt.close();
+			throw ex;
+		}
+		return stmt;
+	}
+	/**
+	 * Binds the value to the statement with the typed setter matching the 
+	 * literals produced by objectToSql.
+	 */
+	private void bind(PreparedStatement stmt, int index, Object value) throws Exception {
+		if(value == null) {
+			stmt.setNull(index, Types.NULL);
+			return;
+		}
+		
+		switch(value.getClass().getCanonicalName()) {
+			case "java.util.UUID":
+				stmt.setObject(index, value);
+				break;
+			case "byte[]":
+				stmt.setBytes(index, Helpers.objectToBytes(value));
+				break;
+			case "java.lang.Boolean":
+				stmt.setBoolean(index, Helpers.objectToBoolean(value));
+				break;
+			case "java.lang.Integer":
+				stmt.setInt(index, (Integer) value);
+				break;
+			case "java.lang.Long":
+				stmt.setLong(index, (Long) value);
+				break;
+			case "java.lang.Double":
+				stmt.setDouble(index, (Double) value);
+				break;
+			case "java.lang.Float":
+				stmt.setFloat(index, (Float) value);
+				break;
+			case "java.math.BigDecimal":
+				stmt.setBigDecimal(index, (java.math.BigDecimal) value);
+				break;
+			case "java.util.Date":
+				stmt.setTimestamp(index, new java.sql.Timestamp(((java.util.Date) value).getTime()));
+				break;
+			case "java.sql.Time":
+				stmt.setTime(index, (java.sql.Time) value);
+				break;
+			case "java.sql.Date":
+				stmt.setDate(index, (java.sql.Date) value);
+				break;
+			case "java.sql.Timestamp":
+				stmt.setTimestamp(index, (java.sql.Timestamp) value);
+				break;
+			case "java.lang.String":
+				stmt.setString(index, value.toString().trim());
+				break;
+			default:
+				throw new Exception("Type '" + value.getClass().getCanonicalName() + " is not supported!");
+		}
+	}
+
 	public String quoteIdentifier(String identifier) throws Exception {
 		if(connection == null)
 			throw new Exception("The connection is not open!");
@@ -172,6 +830,10 @@ public class PostgresAdapter implements Adapter {
 	}
 	
 	public String generateSave(Table<?> table, Map<String, Object> originals, Map<String, Object> changes, boolean isDel) throws Exception {
+		SaveCommand command = generateSaveCommand(table, originals, changes, isDel);
+		return command == null ? null : command.toLiteralSql(this) + ";\n";
+	}
+	public SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> originals, Map<String, Object> changes, boolean isDel) throws Exception {
 		boolean isNew = originals.size() < 1;
 		boolean isMod = changes.size() > 0;
 		
@@ -194,108 +856,180 @@ public class PostgresAdapter implements Adapter {
 		else
 			return null;
 	}
-	private String generateInsert(Table<?> table, Map<String, Object> originals, Map<String, Object> changes) throws Exception {
+	private SaveCommand generateInsert(Table<?> table, Map<String, Object> originals, Map<String, Object> changes) throws Exception {
 		if(originals.size() > 0)
 			throw new Exception("Cannot insert a that has original values!");
 		if(changes.size() < 1)
 			throw new Exception("Cannot insert a row without changes!");
 
-		String sql = "INSERT INTO " + this.quoteIdentifier(table.getTableName()) + " (%COLUMNS%) VALUES (%VALUES%);\n";
+		CommandBuilder sql = new CommandBuilder(SaveCommand.Kind.Insert);
+		sql.append("INSERT INTO " + this.quoteIdentifier(table.getTableName()) + " (");
 
+		// sorted so rows with the same columns produce the same statement
+		TreeSet<String> columns = new TreeSet<String>(changes.keySet());
 		String columnsSql = "";
-		String valuesSql = "";
-		for(String key : changes.keySet()) {
-			if(columnsSql.length() > 1) {
+		for(String key : columns) {
+			if(columnsSql.length() > 0)
 				columnsSql += ", ";
-				valuesSql += ", ";
-			}
-			
 			columnsSql += this.quoteIdentifier(key);
-			valuesSql += this.objectToSql(changes.get(key));
 		}
+		sql.append(columnsSql + ") VALUES (");
 		
-		sql = sql.replace("%COLUMNS%", columnsSql).replace("%VALUES%", valuesSql);
+		boolean isFirst = true;
+		for(String key : columns) {
+			if(!isFirst)
+				sql.append(", ");
+			sql.appendValue(changes.get(key));
+			isFirst = false;
+		}
 		
-		return sql;		
+		SaveCommand ret = sql.append(")").build();
+		ret.getColumns().addAll(columns);
+		return ret;
 	}
-	private String generateUpdate(Table<?> table, Map<String, Object> originals, Map<String, Object> changes) throws Exception {
+	private SaveCommand generateUpdate(Table<?> table, Map<String, Object> originals, Map<String, Object> changes) throws Exception {
 		if(originals.size() < 1)
 			throw new Exception("Cannot update a new row!");
 		if(changes.size() < 1)
 			throw new Exception("Cannot update a row without changes!");
 		
-		String sql = "UPDATE " + this.quoteIdentifier(table.getTableName()) + " SET ";
+		CommandBuilder sql = new CommandBuilder(SaveCommand.Kind.Update);
+		sql.append("UPDATE " + this.quoteIdentifier(table.getTableName()) + " SET ");
 
-		
-		String changesSql = "";
+		boolean isFirst = true;
 		for(String key : changes.keySet()) {
-			Object value = changes.get(key);
-			if(changesSql.length() > 0)
-				changesSql += ", ";
-			changesSql += this.quoteIdentifier(key) + "=" + this.objectToSql(value);
+			if(!isFirst)
+				sql.append(", ");
+			sql.append(this.quoteIdentifier(key) + "=").appendValue(changes.get(key));
+			isFirst = false;
 		}
-		sql += changesSql;
-		sql += " WHERE CTID IN ( ";
+
+		List<String> keys = getKeyColumns(table.getTableName());
+		if(hasKeyValues(keys, originals))
+			return appendKey(sql, keys, originals).build();
 		
-		sql += "SELECT CTID FROM " + this.quoteIdentifier(table.getTableName());		
-		sql += " WHERE 1=1";
-		for(String key : originals.keySet()) {
-			Object value = originals.get(key);
-			if(value == null)
-				sql += " AND " + this.quoteIdentifier(key) + " IS NULL";
-			else {
-				switch(table.getSchema().get(key)) {
-					case "numeric":
-					case "float4":
-					case "float8":
-					case "money":
-						sql += " AND " + this.quoteIdentifier(key) + "::NUMERIC=" + this.objectToSql(value) + "::NUMERIC";
-						break;
-					default:
-						sql += " AND " + this.quoteIdentifier(key) + "=" + this.objectToSql(value);
-				}
-			}
-		}
+		sql.append(" WHERE CTID IN ( ");
+		sql.append("SELECT CTID FROM " + this.quoteIdentifier(table.getTableName()));		
+		appendOriginals(sql, table, originals);
 		
-		return sql + " LIMIT 1);\n";		
+		return sql.append(" LIMIT 1)").build();		
 	}
-	private String generateDelete(Table<?> table, Map<String, Object> originals, Map<String, Object> changes) throws Exception {
+	private SaveCommand generateDelete(Table<?> table, Map<String, Object> originals, Map<String, Object> changes) throws Exception {
 		if(originals.size() < 1)
 			throw new Exception("Cannot delete a new row!");
 		
-		String sql = "DELETE FROM " + this.quoteIdentifier(table.getTableName()) + " WHERE CTID IN ( ";
-
-		sql += "SELECT CTID FROM " + this.quoteIdentifier(table.getTableName()) + " WHERE 1=1 ";
+		CommandBuilder sql = new CommandBuilder(SaveCommand.Kind.Delete);
+		List<String> keys = getKeyColumns(table.getTableName());
+		if(hasKeyValues(keys, originals)) {
+			sql.append("DELETE FROM " + this.quoteIdentifier(table.getTableName()));
+			return appendKey(sql, keys, originals).build();
+		}
+		
+		sql.append("DELETE FROM " + this.quoteIdentifier(table.getTableName()) + " WHERE CTID IN ( ");
+		sql.append("SELECT CTID FROM " + this.quoteIdentifier(table.getTableName()));
+		appendOriginals(sql, table, originals);
+		
+		return sql.append(" LIMIT 1 )").build();
+	}
+	/**
+	 * Picks the primary key, or else the smallest unique key over non-null 
+	 * columns, without predicates or expressions.
+	 */
+	private static final String KEY_SQL = 
+		"SELECT array_agg(a.attname ORDER BY k.ord) AS columns "
+		+ "FROM pg_index i "
+		+ "CROSS JOIN LATERAL unnest(i.indkey) WITH ORDINALITY AS k(attnum, ord) "
+		+ "JOIN pg_attribute a ON a.attrelid = i.indrelid AND a.attnum = k.attnum "
+		+ "WHERE i.indrelid = to_regclass(@Table) AND (i.indisprimary OR i.indisunique) "
+		+ "AND i.indisvalid AND i.indpred IS NULL AND i.indexprs IS NULL "
+		+ "GROUP BY i.indexrelid, i.indisprimary "
+		+ "HAVING bool_and(a.attnotnull) "
+		+ "ORDER BY i.indisprimary DESC, count(*) ASC "
+		+ "LIMIT 1";
+	/**
+	 * Key columns by table name; keyless tables map to an empty list.
+	 */
+	private HashMap<String, List<String>> keyColumns = new HashMap<String, List<String>>();
+	private List<String> getKeyColumns(String tableName) throws Exception {
+		List<String> ret = keyColumns.get(tableName);
+		if(ret != null)
+			return ret;
+		
+		ret = new ArrayList<String>();
+		Parameters params = new Parameters();
+		params.put("@Table", this.quoteIdentifier(tableName));
+		try(ResultSet rs = fill(KEY_SQL, params)) {
+			if(rs.next())
+				for(String column : (String[]) rs.getArray(1).getArray())
+					ret.add(column);
+		}
+		
+		keyColumns.put(tableName, ret);
+		return ret;
+	}
+	private boolean hasKeyValues(List<String> keys, Map<String, Object> originals) {
+		if(keys.isEmpty())
+			return false;
+		for(String key : keys)
+			if(originals.get(key) == null)
+				return false;
+		return true;
+	}
+	/**
+	 * Appends a where clause matching the row's original key values.
+	 */
+	private CommandBuilder appendKey(CommandBuilder sql, List<String> keys, Map<String, Object> originals) throws Exception {
+		String prefix = " WHERE ";
+		for(String key : keys) {
+			sql.append(prefix + this.quoteIdentifier(key) + "=").appendValue(originals.get(key));
+			prefix = " AND ";
+		}
+		return sql;
+	}
+	/**
+	 * Appends a where clause matching every original value of the row.
+	 */
+	private void appendOriginals(CommandBuilder sql, Table<?> table, Map<String, Object> originals) throws Exception {
+		sql.append(" WHERE 1=1");
 		for(String key : originals.keySet()) {
 			Object value = originals.get(key);
 			if(value == null)
-				sql += " AND " + this.quoteIdentifier(key) + " IS NULL";
+				sql.append(" AND " + this.quoteIdentifier(key) + " IS NULL");
 			else {
 				switch(table.getSchema().get(key)) {
 					case "numeric":
 					case "float4":
 					case "float8":
 					case "money":
-						sql += " AND " + this.quoteIdentifier(key) + "::NUMERIC=" + this.objectToSql(value) + "::NUMERIC";
+						sql.append(" AND " + this.quoteIdentifier(key) + "::NUMERIC=").appendValue(value).append("::NUMERIC");
 						break;
 					default:
-						sql += " AND " + this.quoteIdentifier(key) + "=" + this.objectToSql(value);
+						sql.append(" AND " + this.quoteIdentifier(key) + "=").appendValue(value);
 				}
 			}
 		}
-		
-		return sql + " LIMIT 1 );\n";
 	}
 
 	public String generateSave(Table<?> table, Map<String, Object> values, boolean isDel) throws Exception {
-		boolean isMod = values.size() > 0;
+		return generateSave(table, values, values.keySet(), isDel);
+	}
+	public SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> values, boolean isDel) throws Exception {
+		return generateSaveCommand(table, values, values.keySet(), isDel);
+	}
+	public String generateSave(Table<?> table, Map<String, Object> values, Set<String> modified, boolean isDel) throws Exception {
+		SaveCommand command = generateSaveCommand(table, values, modified, isDel);
+		return command == null ? null : command.toLiteralSql(this) + ";\n";
+	}
+	public SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> values, Set<String> modified, boolean isDel) throws Exception {
+		Object version = values.get(VersionedRow.COLUMN_VERSION);
+		boolean isNew = version == null || Helpers.objectToLong(version) < 1; 
 		
-		if(!values.containsKey(VersionedRow.COLUMN_GUID) || values.get(VersionedRow.COLUMN_GUID) == null)
-			values.put(VersionedRow.COLUMN_GUID, Guid.computeUuid());
-		if(!values.containsKey(VersionedRow.COLUMN_VERSION) || values.get(VersionedRow.COLUMN_VERSION) == null)
-			values.put(VersionedRow.COLUMN_VERSION, 0);
-				
-		boolean isNew = Helpers.objectToLong(values.get(VersionedRow.COLUMN_VERSION)) < 1; 
+		boolean isMod = isNew && values.size() > 0;
+		// existing rows only update the columns modified since they were loaded
+		if(!isNew)
+			for(String column : modified)
+				if(!column.equals(VersionedRow.COLUMN_GUID) && !column.equals(VersionedRow.COLUMN_VERSION))
+					isMod = true;
 					
 		//	New	Mod	Del
 		//	F	F	T	Delete
@@ -309,82 +1043,83 @@ public class PostgresAdapter implements Adapter {
 		if(!isNew && isDel)
 			return generateDelete(table, values);
 		else if(!isNew && isMod && !isDel)
-			return generateUpdate(table, values);
-		else if(isNew && isMod && !isDel)
+			return generateUpdate(table, values, modified);
+		else if(isNew && isMod && !isDel) {
+			// only new rows being inserted are given a GUID
+			if(values.get(VersionedRow.COLUMN_GUID) == null)
+				values.put(VersionedRow.COLUMN_GUID, GuidFactory.instanciate());
 			return generateInsert(table, values);
+		}
 		else
 			return null;
 	}
-	private String generateInsert(Table<?> table, Map<String, Object> values) throws Exception {
+	private SaveCommand generateInsert(Table<?> table, Map<String, Object> values) throws Exception {
 		if(values.size() < 0)
 			throw new Exception("Cannot insert a that has no values!");
 
-		String sql = "INSERT INTO " + this.quoteIdentifier(table.getTableName()) + " (%COLUMNS%) VALUES (%VALUES%);\n";
+		CommandBuilder sql = new CommandBuilder(SaveCommand.Kind.Insert);
+		sql.append("INSERT INTO " + this.quoteIdentifier(table.getTableName()) + " (");
 
+		// sorted so rows with the same columns produce the same statement
+		TreeSet<String> columns = new TreeSet<String>(values.keySet());
 		String columnsSql = "";
-		String valuesSql = "";
-		for(String key : values.keySet()) {
+		for(String key : columns) {
 			if(key.equals(VersionedRow.COLUMN_GUID) || key.equals(VersionedRow.COLUMN_VERSION))
 				continue;
-
-			if(columnsSql.length() > 1) {
-				columnsSql += ", ";
-				valuesSql += ", ";
-			}			
-			columnsSql += this.quoteIdentifier(key);
-			valuesSql += this.objectToSql(values.get(key));
+			columnsSql += this.quoteIdentifier(key) + ", ";
 		}
-
-		if(columnsSql.length() > 1) {
-			columnsSql += ", ";
-			valuesSql += ", ";
-		}			
 		columnsSql += this.quoteIdentifier(VersionedRow.COLUMN_GUID);
-		valuesSql += this.objectToSql(values.get(VersionedRow.COLUMN_GUID));
 		columnsSql += ", " + this.quoteIdentifier(VersionedRow.COLUMN_VERSION);
-		valuesSql += ", " + this.objectToSql(1);
+		sql.append(columnsSql + ") VALUES (");
+
+		for(String key : columns) {
+			if(key.equals(VersionedRow.COLUMN_GUID) || key.equals(VersionedRow.COLUMN_VERSION))
+				continue;
+			sql.appendValue(values.get(key)).append(", ");
+		}
+		sql.appendValue(values.get(VersionedRow.COLUMN_GUID));
+		sql.append(", ").appendValue(Long.valueOf(1));
 			
-		sql = sql.replace("%COLUMNS%", columnsSql).replace("%VALUES%", valuesSql);
-		
-		return sql;		
+		SaveCommand ret = sql.append(")").build();
+		for(String key : columns)
+			if(!key.equals(VersionedRow.COLUMN_GUID) && !key.equals(VersionedRow.COLUMN_VERSION))
+				ret.getColumns().add(key);
+		ret.getColumns().add(VersionedRow.COLUMN_GUID);
+		ret.getColumns().add(VersionedRow.COLUMN_VERSION);
+		return ret;
 	}
-	private String generateUpdate(Table<?> table, Map<String, Object> values) throws Exception {
+	private SaveCommand generateUpdate(Table<?> table, Map<String, Object> values, Set<String> modified) throws Exception {
 		if(values.size() < 1)
 			throw new Exception("Cannot update a row without values!");
 
-		String sql = "UPDATE " + this.quoteIdentifier(table.getTableName()) + " SET ";
-		String valuesSql = "";
-		for(String key : values.keySet()) {
+		CommandBuilder sql = new CommandBuilder(SaveCommand.Kind.Update);
+		sql.append("UPDATE " + this.quoteIdentifier(table.getTableName()) + " SET ");
+		// sorted so rows with the same modified columns share a statement
+		for(String key : new TreeSet<String>(modified)) {
 			if(key.equals(VersionedRow.COLUMN_GUID) || key.equals(VersionedRow.COLUMN_VERSION))
 				continue;
 			
-			Object value = values.get(key);
-			if(valuesSql.length() > 0)
-				valuesSql += ", ";
-			valuesSql += this.quoteIdentifier(key) + "=" + this.objectToSql(value);
+			sql.append(this.quoteIdentifier(key) + "=").appendValue(values.get(key)).append(", ");
 		}
 		
-		if(valuesSql.length() > 0)
-			valuesSql += ", ";
-		
-		valuesSql += this.quoteIdentifier(VersionedRow.COLUMN_VERSION) + "=" 
-			+ this.objectToSql(Helpers.objectToLong(values.get(VersionedRow.COLUMN_VERSION)) + 1);
-		
+		long version = Helpers.objectToLong(values.get(VersionedRow.COLUMN_VERSION));
+		sql.append(this.quoteIdentifier(VersionedRow.COLUMN_VERSION) + "=").appendValue(version + 1);
 		
-		sql += valuesSql + " WHERE ";
-		sql += this.quoteIdentifier(VersionedRow.COLUMN_VERSION) + "=" + this.objectToSql(values.get(VersionedRow.COLUMN_VERSION));
-		sql += " AND " + this.quoteIdentifier(VersionedRow.COLUMN_GUID) + "=" + this.objectToSql(values.get(VersionedRow.COLUMN_GUID));
+		sql.append(" WHERE " + this.quoteIdentifier(VersionedRow.COLUMN_VERSION) + "=").appendValue(version);
+		sql.append(" AND " + this.quoteIdentifier(VersionedRow.COLUMN_GUID) + "=").appendValue(values.get(VersionedRow.COLUMN_GUID));
 		
-		return sql + ";\n";		
+		return sql.build();		
 	}
-	private String generateDelete(Table<?> table, Map<String, Object> values) throws Exception {
-		if(Helpers.objectToLong(values.get(VersionedRow.COLUMN_VERSION)) == 0)
+	private SaveCommand generateDelete(Table<?> table, Map<String, Object> values) throws Exception {
+		long version = Helpers.objectToLong(values.get(VersionedRow.COLUMN_VERSION));
+		if(version == 0)
 			throw new Exception("Cannot delete a new row!");
 		
-		String sql = "DELETE FROM " + this.quoteIdentifier(table.getTableName()) + " WHERE ";
-		sql += this.quoteIdentifier(VersionedRow.COLUMN_GUID) + "=" + this.objectToSql(values.get(VersionedRow.COLUMN_GUID));
-		sql += " AND " + this.quoteIdentifier(VersionedRow.COLUMN_VERSION) + "=" + this.objectToSql(values.get(VersionedRow.COLUMN_VERSION));
+		CommandBuilder sql = new CommandBuilder(SaveCommand.Kind.Delete);
+		sql.append("DELETE FROM " + this.quoteIdentifier(table.getTableName()) + " WHERE ");
+		sql.append(this.quoteIdentifier(VersionedRow.COLUMN_GUID) + "=").appendValue(values.get(VersionedRow.COLUMN_GUID));
+		sql.append(" AND " + this.quoteIdentifier(VersionedRow.COLUMN_VERSION) + "=").appendValue(version);
 		
-		return sql + ";\n";
+		return sql.build();
 	}
 }
@@ -0,0 +1,382 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.io.InputStream;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.Adapter;
+import com.lagovistatech.database.Parameters;
+import com.lagovistatech.database.ReplicaSelection;
+import com.lagovistatech.database.SaveCommand;
+import com.lagovistatech.database.Table;
+import com.lagovistatech.database.UpsertRule;
+
+/**
+ * The routing adapter holds a primary adapter and any number of replica
+ * adapters.  Reads outside of a transaction go to a replica; all else goes to
+ * the primary.  Replicas take the primary's settings when opened.  After a
+ * write, reads only go to replicas that have replayed the primary's write 
+ * ahead log past the write.  Executed statements other than selects, shows,
+ * sets, resets, and values lists count as writes.
+ */
+public class RoutingAdapter implements Adapter {
+	public RoutingAdapter(Factory<Adapter> adapterFactory) {
+		this.adapterFactory = adapterFactory;
+		this.primary = adapterFactory.create();
+	}
+
+	private Factory<Adapter> adapterFactory;
+	private Adapter primary;
+	private List<Adapter> replicas = new ArrayList<Adapter>();
+	/**
+	 * Moving average of each replica's read time in nanoseconds; zero until
+	 * the replica is first read from.
+	 */
+	private long[] latencies = new long[0];
+	private int nextReplica = 0;
+
+	public void addReplica(String server, int port) {
+		Adapter replica = adapterFactory.create();
+		replica.setServer(server);
+		replica.setPort(port);
+		replicas.add(replica);
+		latencies = Arrays.copyOf(latencies, replicas.size());
+		replayed = Arrays.copyOf(replayed, replicas.size());
+	}
+	public int getReplicaCount() { return replicas.size(); }
+
+	private ReplicaSelection replicaSelection = ReplicaSelection.RoundRobin;
+	public ReplicaSelection getReplicaSelection() { return replicaSelection; }
+	public void setReplicaSelection(ReplicaSelection value) { replicaSelection = value; }
+
+	/**
+	 * @return Replica to try first, or -1 for the primary.
+	 */
+	private int pick() {
+		if(replicas.isEmpty() || primary.isInTransaction())
+			return -1;
+
+		if(replicaSelection == ReplicaSelection.LeastLatency) {
+			int ret = 0;
+			for(int cnt = 1; cnt < latencies.length; cnt++)
+				if(latencies[cnt] < latencies[ret])
+					ret = cnt;
+			return ret;
+		}
+		return nextReplica;
+	}
+	/**
+	 * Moves the round robin past the replica read from; reads that went to
+	 * the primary do not move it.
+	 */
+	private int use(int replica) {
+		if(replica >= 0)
+			nextReplica = (replica + 1) % replicas.size();
+		return replica;
+	}
+	/**
+	 * Milliseconds between checks of whether replicas have replayed the
+	 * consistency token.
+	 */
+	private static final long REPLAY_POLL = 5;
+	
+	private long maximumReplicaWait = 100;
+	public long getMaximumReplicaWait() { return maximumReplicaWait; }
+	public void setMaximumReplicaWait(long value) { maximumReplicaWait = value; }
+
+	/**
+	 * Set by statements that may write, so the token is captured before the
+	 * next replica read.
+	 */
+	private boolean isWritePending = false;
+	/**
+	 * Statements starting with a word that does not write, other than
+	 * selects into a new table.  Selects calling functions that write must
+	 * run in a transaction, whose commit marks the write.
+	 */
+	private static final Pattern READ = Pattern.compile("\\s*\\(*\\s*(SELECT|SHOW|SET|RESET|VALUES)\\b(?!.*\\bINTO\\b).*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	private void executed(String sql) {
+		if(!READ.matcher(sql).matches())
+			isWritePending = true;
+	}
+	private String consistencyToken;
+	private long consistencyLsn = 0;
+	/**
+	 * Position each replica was last seen to have replayed to.
+	 */
+	private long[] replayed = new long[0];
+	
+	public String getConsistencyToken() throws Exception {
+		if(isWritePending && !primary.isInTransaction()) {
+			try(ResultSet rs = primary.fill("SELECT pg_current_wal_lsn()::TEXT")) {
+				rs.next();
+				setConsistencyToken(rs.getString(1));
+			}
+			isWritePending = false;
+		}
+		return consistencyToken;
+	}
+	public void setConsistencyToken(String value) {
+		consistencyToken = value;
+		consistencyLsn = value == null ? 0 : parseLsn(value);
+	}
+	/**
+	 * @return Log sequence number written as two hexadecimal halves, such as 
+	 * 0/16B3748, as a single number.
+	 */
+	private static long parseLsn(String lsn) {
+		int slash = lsn.indexOf('/');
+		return Long.parseLong(lsn.substring(0, slash), 16) << 32 | Long.parseLong(lsn.substring(slash + 1), 16);
+	}
+	/**
+	 * Picks a replica that has replayed the consistency token, waiting up to 
+	 * the maximum replica wait for one to catch up.
+	 * 
+	 * @return Replica to read from, or -1 for the primary.
+	 */
+	private int pickConsistent() throws Exception {
+		int replica = pick();
+		if(replica < 0 || getConsistencyToken() == null)
+			return use(replica);
+		
+		long deadline = System.nanoTime() + maximumReplicaWait * 1000000;
+		while(true) {
+			for(int cnt = 0; cnt < replicas.size(); cnt++) {
+				int candidate = (replica + cnt) % replicas.size();
+				if(hasReplayed(candidate))
+					return use(candidate);
+			}
+			if(System.nanoTime() >= deadline)
+				return -1;
+			Thread.sleep(REPLAY_POLL);
+		}
+	}
+	/**
+	 * Servers that are not in recovery are treated as current.
+	 */
+	private boolean hasReplayed(int replica) throws Exception {
+		if(replayed[replica] >= consistencyLsn)
+			return true;
+		
+		try(ResultSet rs = replicas.get(replica).fill("SELECT CASE WHEN pg_is_in_recovery() THEN pg_last_wal_replay_lsn()::TEXT END")) {
+			rs.next();
+			String lsn = rs.getString(1);
+			replayed[replica] = lsn == null ? Long.MAX_VALUE : parseLsn(lsn);
+		}
+		return replayed[replica] >= consistencyLsn;
+	}
+	private void record(int replica, long start) {
+		long elapsed = Math.max(1, System.nanoTime() - start);
+		latencies[replica] = latencies[replica] == 0 ? elapsed : (latencies[replica] * 7 + elapsed) / 8;
+	}
+
+	public String getServer() { return primary.getServer(); }
+	public void setServer(String server) { primary.setServer(server); }
+
+	public int getPort() { return primary.getPort(); }
+	public void setPort(int port) { primary.setPort(port); }
+
+	public String getDatabase() { return primary.getDatabase(); }
+	public void setDatabase(String database) { primary.setDatabase(database); }
+
+	public String getUser() { return primary.getUser(); }
+	public void setUser(String user) { primary.setUser(user); }
+
+	public int getTimeOut() { return primary.getTimeOut(); }
+	public void setTimeOut(int timeOut) { primary.setTimeOut(timeOut); }
+
+	private String password;
+	public void setPassword(String password) {
+		this.password = password;
+		primary.setPassword(password);
+	}
+
+	public void open() throws Exception {
+		primary.open();
+		try {
+			for(Adapter replica : replicas) {
+				replica.setDatabase(primary.getDatabase());
+				replica.setUser(primary.getUser());
+				replica.setPassword(password);
+				replica.setTimeOut(primary.getTimeOut());
+				replica.setStatementCacheSize(primary.getStatementCacheSize());
+				replica.setFetchSize(primary.getFetchSize());
+				replica.open();
+			}
+		}
+		catch(Exception ex) {
+			close();
+			throw ex;
+		}
+	}
+	public void close() throws Exception {
+		Exception error = null;
+		for(Adapter adapter : replicas) {
+			try { adapter.close(); }
+			catch(Exception ex) { error = ex; }
+		}
+		primary.close();
+		if(error != null)
+			throw error;
+	}
+	public boolean isValid(int timeOut) throws Exception { return primary.isValid(timeOut); }
+
+	public void begin() throws Exception { primary.begin(); }
+	public void commit() throws Exception {
+		primary.commit();
+		isWritePending = true;
+	}
+	public void rollback() throws Exception { primary.rollback(); }
+	public boolean isInTransaction() { return primary.isInTransaction(); }
+
+	public int getBatchSize() { return primary.getBatchSize(); }
+	public void setBatchSize(int value) { primary.setBatchSize(value); }
+	public long[] executeBatch(String sql, List<List<Object>> values) throws Exception {
+		isWritePending = true;
+		return primary.executeBatch(sql, values);
+	}
+
+	public long copyIn(String tableName, List<String> columns, List<List<Object>> values) throws Exception {
+		isWritePending = true;
+		return primary.copyIn(tableName, columns, values);
+	}
+	public ResultSetMetaData describe(String sql, Parameters params) throws Exception {
+		int replica = pickConsistent();
+		if(replica < 0)
+			return primary.describe(sql, params);
+
+		long start = System.nanoTime();
+		ResultSetMetaData ret = replicas.get(replica).describe(sql, params);
+		record(replica, start);
+		return ret;
+	}
+	public InputStream copyOut(String sql, Parameters params) throws Exception {
+		int replica = pickConsistent();
+		if(replica < 0)
+			return primary.copyOut(sql, params);
+
+		long start = System.nanoTime();
+		InputStream ret = replicas.get(replica).copyOut(sql, params);
+		record(replica, start);
+		return ret;
+	}
+	public ResultSet fillByKeys(String tableName, String keyColumn, Object[] keys) throws Exception {
+		int replica = pickConsistent();
+		if(replica < 0)
+			return primary.fillByKeys(tableName, keyColumn, keys);
+
+		long start = System.nanoTime();
+		ResultSet ret = replicas.get(replica).fillByKeys(tableName, keyColumn, keys);
+		record(replica, start);
+		return ret;
+	}
+	public void executeReturning(List<SaveCommand> commands, ReturningReader reader) throws Exception {
+		isWritePending = true;
+		primary.executeReturning(commands, reader);
+	}
+	public Map<UUID, Long> updateVersioned(Table<?> table, Set<String> columns, List<Map<String, Object>> rows) throws Exception {
+		isWritePending = true;
+		return primary.updateVersioned(table, columns, rows);
+	}
+	public Map<UUID, Long> upsertVersioned(Table<?> table, Set<String> columns, List<Map<String, Object>> rows, UpsertRule rule) throws Exception {
+		isWritePending = true;
+		return primary.upsertVersioned(table, columns, rows, rule);
+	}
+
+	public int getMaximumInsertRows() { return primary.getMaximumInsertRows(); }
+	public void setMaximumInsertRows(int value) { primary.setMaximumInsertRows(value); }
+	public List<SaveCommand> coalesce(List<SaveCommand> commands) throws Exception { return primary.coalesce(commands); }
+
+	public int getFetchSize() { return primary.getFetchSize(); }
+	public void setFetchSize(int value) {
+		primary.setFetchSize(value);
+		for(Adapter replica : replicas)
+			replica.setFetchSize(value);
+	}
+	public ResultSet stream(String sql, Parameters params) throws Exception { return primary.stream(sql, params); }
+
+	public String objectToSql(Object value) throws Exception { return primary.objectToSql(value); }
+
+	public long execute(String sql) throws Exception {
+		executed(sql);
+		return primary.execute(sql);
+	}
+	public ResultSet fill(String sql) throws Exception {
+		int replica = pickConsistent();
+		if(replica < 0)
+			return primary.fill(sql);
+
+		long start = System.nanoTime();
+		ResultSet ret = replicas.get(replica).fill(sql);
+		record(replica, start);
+		return ret;
+	}
+	public long execute(String sql, Parameters params) throws Exception {
+		executed(sql);
+		return primary.execute(sql, params);
+	}
+	public ResultSet fill(String sql, Parameters params) throws Exception {
+		int replica = pickConsistent();
+		if(replica < 0)
+			return primary.fill(sql, params);
+
+		long start = System.nanoTime();
+		ResultSet ret = replicas.get(replica).fill(sql, params);
+		record(replica, start);
+		return ret;
+	}
+
+	public int getStatementCacheSize() { return primary.getStatementCacheSize(); }
+	public void setStatementCacheSize(int value) { primary.setStatementCacheSize(value); }
+	public long getStatementCacheHits() { return primary.getStatementCacheHits(); }
+	public long getStatementCacheMisses() { return primary.getStatementCacheMisses(); }
+	public long getStatementCacheEvictions() { return primary.getStatementCacheEvictions(); }
+
+	public String quoteIdentifier(String identifier) throws Exception { return primary.quoteIdentifier(identifier); }
+	public String quoteLiteral(String literal) throws Exception { return primary.quoteLiteral(literal); }
+
+	public String generateSave(Table<?> table, Map<String, Object> originals, Map<String, Object> changes, boolean isDel) throws Exception {
+		return primary.generateSave(table, originals, changes, isDel);
+	}
+	public String generateSave(Table<?> table, Map<String, Object> values, boolean isDel) throws Exception {
+		return primary.generateSave(table, values, isDel);
+	}
+	public SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> originals, Map<String, Object> changes, boolean isDel) throws Exception {
+		return primary.generateSaveCommand(table, originals, changes, isDel);
+	}
+	public SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> values, boolean isDel) throws Exception {
+		return primary.generateSaveCommand(table, values, isDel);
+	}
+	public String generateSave(Table<?> table, Map<String, Object> values, Set<String> modified, boolean isDel) throws Exception {
+		return primary.generateSave(table, values, modified, isDel);
+	}
+	public SaveCommand generateSaveCommand(Table<?> table, Map<String, Object> values, Set<String> modified, boolean isDel) throws Exception {
+		return primary.generateSaveCommand(table, values, modified, isDel);
+	}
+}
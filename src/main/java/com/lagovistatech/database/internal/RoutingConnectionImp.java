@@ -0,0 +1,43 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import com.lagovistatech.database.ReplicaSelection;
+import com.lagovistatech.database.RoutingConnection;
+
+public class RoutingConnectionImp extends ConnectionImp implements RoutingConnection {
+	public RoutingConnectionImp(RoutingAdapter adapter) {
+		super(adapter);
+		this.routing = adapter;
+	}
+
+	private RoutingAdapter routing;
+
+	public void addReplica(String server, int port) { routing.addReplica(server, port); }
+	public int getReplicaCount() { return routing.getReplicaCount(); }
+
+	public ReplicaSelection getReplicaSelection() { return routing.getReplicaSelection(); }
+	public void setReplicaSelection(ReplicaSelection value) { routing.setReplicaSelection(value); }
+
+	public long getMaximumReplicaWait() { return routing.getMaximumReplicaWait(); }
+	public void setMaximumReplicaWait(long value) { routing.setMaximumReplicaWait(value); }
+
+	public String getConsistencyToken() throws Exception { return routing.getConsistencyToken(); }
+	public void setConsistencyToken(String value) { routing.setConsistencyToken(value); }
+}
@@ -0,0 +1,146 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.sql.ResultSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.Adapter;
+import com.lagovistatech.database.Row;
+import com.lagovistatech.database.Table;
+
+/**
+ * The row cursor reads rows one at a time from a streamed result.  Rows are
+ * not kept by the cursor nor added to their table, and their table does not
+ * keep them when they change.  The transaction started for the cursor is
+ * committed when it is closed, or rolled back if reading or handling a row
+ * failed.
+ *
+ * @param <R> Type of rows.
+ */
+public class RowCursor<R extends Row> implements Iterator<R>, AutoCloseable {
+	/**
+	 * @param rowFactory Factory to create rows.
+	 * @param rs Streamed result to read.
+	 * @param owner Adapter whose transaction is committed on close, or null.
+	 * @throws Exception Errors encountered.
+	 */
+	public RowCursor(Factory<R> rowFactory, ResultSet rs, Adapter owner) throws Exception {
+		this.rowFactory = rowFactory;
+		this.rs = rs;
+		this.owner = owner;
+		this.plan = new BindingPlan(rs.getMetaData());
+		this.table = ConnectionImp.createTable(rowFactory, plan);
+		((TableImp<R>) this.table).setIsDirtyTracked(false);
+	}
+
+	private Factory<R> rowFactory;
+	private ResultSet rs;
+	private Adapter owner;
+	private BindingPlan plan;
+	private Table<R> table;
+	private R next;
+	private boolean isClosed = false;
+	private boolean isFailed = false;
+
+	public boolean hasNext() {
+		if(next != null)
+			return true;
+		if(isClosed)
+			return false;
+
+		try {
+			if(!rs.next()) {
+				close();
+				return false;
+			}
+			next = rowFactory.create();
+			next.setTable(table);
+			plan.copy(rs, next);
+			return true;
+		}
+		catch(RuntimeException ex) {
+			isFailed = true;
+			throw ex;
+		}
+		catch(Exception ex) {
+			isFailed = true;
+			throw new IllegalStateException(ex);
+		}
+	}
+	public R next() {
+		if(!hasNext())
+			throw new NoSuchElementException();
+
+		R ret = next;
+		next = null;
+		return ret;
+	}
+
+	/**
+	 * @return Spliterator over the rows that marks the cursor failed when the
+	 * action given a row throws.
+	 */
+	public Spliterator<R> spliterator() {
+		return new Spliterators.AbstractSpliterator<R>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			public boolean tryAdvance(Consumer<? super R> action) {
+				if(!hasNext())
+					return false;
+				
+				R row = next();
+				try {
+					action.accept(row);
+				}
+				catch(RuntimeException | Error ex) {
+					isFailed = true;
+					throw ex;
+				}
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Releases the cursor, committing the transaction started for it, or
+	 * rolling it back if reading or handling a row failed.
+	 */
+	public void close() {
+		if(isClosed)
+			return;
+		isClosed = true;
+
+		try {
+			try { rs.close(); }
+			finally {
+				if(owner != null && isFailed)
+					owner.rollback();
+				else if(owner != null)
+					owner.commit();
+			}
+		}
+		catch(Exception ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+}
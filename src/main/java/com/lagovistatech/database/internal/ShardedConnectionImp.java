@@ -0,0 +1,492 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.Adapter;
+import com.lagovistatech.database.ColumnarTable;
+import com.lagovistatech.database.CommitRule;
+import com.lagovistatech.database.Connection;
+import com.lagovistatech.database.GuidFactory;
+import com.lagovistatech.database.Parameters;
+import com.lagovistatech.database.PreparedTransactionException;
+import com.lagovistatech.database.Row;
+import com.lagovistatech.database.ShardMap;
+import com.lagovistatech.database.ShardedConnection;
+import com.lagovistatech.database.Table;
+import com.lagovistatech.database.UpsertRule;
+import com.lagovistatech.database.VersionedRow;
+
+public class ShardedConnectionImp implements ShardedConnection {
+	public ShardedConnectionImp(Factory<Adapter> adapterFactory) {
+		this.adapterFactory = adapterFactory;
+	}
+
+	private Factory<Adapter> adapterFactory;
+	private List<ConnectionImp> shards = new ArrayList<ConnectionImp>();
+
+	public void addShard(String server, int port) {
+		ConnectionImp shard = createShard(adapterFactory.create());
+		shard.setServer(server);
+		shard.setPort(port);
+		shards.add(shard);
+	}
+	private ConnectionImp createShard(Adapter adapter) {
+		ConnectionImp shard = new ConnectionImp(adapter);
+		shard.setDatabase(database);
+		shard.setUser(user);
+		shard.setPassword(password);
+		shard.setTimeOut(timeOut);
+		shard.setBatchSize(batchSize);
+		shard.setFetchSize(fetchSize);
+		return shard;
+	}
+	/**
+	 * @return The first shard, added with the adapter's default server and
+	 * port when there is none yet.
+	 */
+	private ConnectionImp firstShard() {
+		if(shards.isEmpty())
+			shards.add(createShard(adapterFactory.create()));
+		return shards.get(0);
+	}
+	public int getShardCount() { return shards.size(); }
+	public Connection getShard(int index) { return shards.get(index); }
+
+	private ShardMap shardMap = ShardMap.hash;
+	public ShardMap getShardMap() { return shardMap; }
+	public void setShardMap(ShardMap value) { shardMap = value; }
+
+	private CommitRule commitRule = CommitRule.PerPartition;
+	public CommitRule getCommitRule() { return commitRule; }
+	public void setCommitRule(CommitRule value) { commitRule = value; }
+
+	public String getServer() { return firstShard().getServer(); }
+	public void setServer(String server) { firstShard().setServer(server); }
+
+	public int getPort() { return firstShard().getPort(); }
+	public void setPort(int port) { firstShard().setPort(port); }
+
+	private String database;
+	public String getDatabase() { return database; }
+	public void setDatabase(String database) {
+		this.database = database;
+		for(ConnectionImp shard : shards)
+			shard.setDatabase(database);
+	}
+
+	private String user;
+	public String getUser() { return user; }
+	public void setUser(String user) {
+		this.user = user;
+		for(ConnectionImp shard : shards)
+			shard.setUser(user);
+	}
+
+	private int timeOut = 30;
+	public int getTimeOut() { return timeOut; }
+	public void setTimeOut(int timeOut) {
+		this.timeOut = timeOut;
+		for(ConnectionImp shard : shards)
+			shard.setTimeOut(timeOut);
+	}
+
+	private String password;
+	public void setPassword(String password) {
+		this.password = password;
+		for(ConnectionImp shard : shards)
+			shard.setPassword(password);
+	}
+
+	private int batchSize = 1000;
+	public int getBatchSize() { return batchSize; }
+	public void setBatchSize(int value) {
+		batchSize = value;
+		for(ConnectionImp shard : shards)
+			shard.setBatchSize(value);
+	}
+
+	private int fetchSize = 1000;
+	public int getFetchSize() { return fetchSize; }
+	public void setFetchSize(int value) {
+		fetchSize = value;
+		for(ConnectionImp shard : shards)
+			shard.setFetchSize(value);
+	}
+
+	public Adapter getAdapter() { return firstShard().getAdapter(); }
+	public void setAdapter(Adapter value) {
+		if(shards.isEmpty())
+			shards.add(createShard(value));
+		else
+			shards.get(0).setAdapter(value);
+	}
+
+	public void open() throws Exception {
+		if(shards.isEmpty())
+			throw new Exception("Sharded connections require a shard!");
+
+		try {
+			scatter(allShards(), shard -> { shard.open(); return null; });
+		}
+		catch(Exception ex) {
+			close();
+			throw ex;
+		}
+	}
+	public void close() throws Exception {
+		Exception error = null;
+		for(ConnectionImp shard : shards) {
+			try {
+				shard.close();
+			}
+			catch(Exception ex) {
+				if(error == null)
+					error = ex;
+			}
+		}
+		if(error != null)
+			throw error;
+	}
+
+	private interface ShardCall<T> {
+		T call(ConnectionImp shard) throws Exception;
+	}
+	private List<Integer> allShards() {
+		List<Integer> ret = new ArrayList<Integer>();
+		for(int cnt = 0; cnt < shards.size(); cnt++)
+			ret.add(cnt);
+		return ret;
+	}
+	/**
+	 * Runs the call on each of the shards concurrently and waits for all of
+	 * them, throwing the first shard's error if any failed.
+	 *
+	 * @return Results in the order of the indexes.
+	 */
+	private <T> List<T> scatter(List<Integer> indexes, ShardCall<T> call) throws Exception {
+		List<Callable<T>> calls = new ArrayList<Callable<T>>();
+		for(int index : indexes) {
+			ConnectionImp shard = shards.get(index);
+			calls.add(() -> call.call(shard));
+		}
+		return Workers.invokeAll(calls);
+	}
+	private int shardOf(UUID guid) {
+		int ret = shardMap.shardOf(guid, shards.size());
+		if(ret < 0 || ret >= shards.size())
+			throw new IndexOutOfBoundsException("Shard map returned shard " + ret + " of " + shards.size() + "!");
+		return ret;
+	}
+	/**
+	 * Splits the rows per shard, giving new rows a GUID so they can be mapped.
+	 */
+	private <R extends Row> Map<Integer, List<R>> partition(List<R> rows) throws Exception {
+		Map<Integer, List<R>> ret = new LinkedHashMap<Integer, List<R>>();
+		for(R row : rows) {
+			if(!(row instanceof VersionedRow))
+				throw new Exception("Only versioned rows can be sharded!");
+
+			VersionedRow versioned = (VersionedRow) row;
+			if(versioned.getGuid() == null)
+				versioned.setGuid(GuidFactory.instanciate());
+			ret.computeIfAbsent(shardOf(versioned.getGuid()), shard -> new ArrayList<R>()).add(row);
+		}
+		return ret;
+	}
+	private interface PartitionCall<R extends Row, T> {
+		T call(ConnectionImp shard, List<R> rows, WriteBack writeBack) throws Exception;
+	}
+	/**
+	 * Runs the call on each shard's dirty rows concurrently, then writes back
+	 * the values returned by the shards that committed.  With the two phase
+	 * rule and no transaction begun, the shards commit together.
+	 */
+	private <R extends Row, T> List<T> scatter(Table<R> table, PartitionCall<R, T> call) throws Exception {
+		Map<Integer, List<R>> partitions = partition(table.getDirtyRows());
+		List<Integer> indexes = new ArrayList<Integer>(partitions.keySet());
+		WriteBack[] writeBacks = new WriteBack[shards.size()];
+		boolean[] isCommitted = new boolean[shards.size()];
+		boolean isTwoPhase = commitRule == CommitRule.TwoPhase && inTransaction(indexes).isEmpty();
+
+		try {
+			if(isTwoPhase)
+				scatter(indexes, shard -> { shard.begin(); return null; });
+
+			List<T> ret = scatter(indexes, shard -> {
+				int index = shards.indexOf(shard);
+				WriteBack writeBack = new WriteBack();
+				T value = call.call(shard, partitions.get(index), writeBack);
+				writeBacks[index] = writeBack;
+				isCommitted[index] = !isTwoPhase;
+				return value;
+			});
+
+			if(isTwoPhase)
+				commitTwoPhase(indexes, isCommitted);
+			return ret;
+		}
+		catch(Exception ex) {
+			if(isTwoPhase)
+				rollback(inTransaction(indexes), ex);
+			throw ex;
+		}
+		finally {
+			for(int index : indexes)
+				if(isCommitted[index])
+					writeBacks[index].apply(table);
+		}
+	}
+	/**
+	 * @return The shards of the indexes with a transaction begun.
+	 */
+	private List<Integer> inTransaction(List<Integer> indexes) {
+		List<Integer> ret = new ArrayList<Integer>();
+		for(int index : indexes)
+			if(shards.get(index).getAdapter().isInTransaction())
+				ret.add(index);
+		return ret;
+	}
+	/**
+	 * Rolls back the shards, adding their errors to the error that caused it.
+	 */
+	private void rollback(List<Integer> indexes, Exception error) {
+		for(int index : indexes) {
+			try {
+				shards.get(index).rollback();
+			}
+			catch(Exception ex) {
+				error.addSuppressed(ex);
+			}
+		}
+	}
+	/**
+	 * Prepares the transactions of the shards, then commits them all, or
+	 * rolls them all back if any failed to prepare.
+	 *
+	 * @param isCommitted Set for each shard once its transaction commits.
+	 */
+	private void commitTwoPhase(List<Integer> indexes, boolean[] isCommitted) throws Exception {
+		String[] prepared = new String[shards.size()];
+		try {
+			scatter(indexes, shard -> {
+				String id = "sharded-" + UUID.randomUUID();
+				shard.execute("PREPARE TRANSACTION '" + id + "'");
+				prepared[shards.indexOf(shard)] = id;
+				// the prepared transaction no longer belongs to the session
+				shard.commit();
+				return null;
+			});
+		}
+		catch(Exception ex) {
+			for(int index : indexes) {
+				if(prepared[index] == null)
+					continue;
+				try {
+					shards.get(index).execute("ROLLBACK PREPARED '" + prepared[index] + "'");
+				}
+				catch(Exception rollback) {
+					ex.addSuppressed(rollback);
+				}
+			}
+			rollback(inTransaction(indexes), ex);
+			throw ex;
+		}
+
+		try {
+			scatter(indexes, shard -> {
+				int index = shards.indexOf(shard);
+				shard.execute("COMMIT PREPARED '" + prepared[index] + "'");
+				isCommitted[index] = true;
+				return null;
+			});
+		}
+		catch(Exception ex) {
+			List<String> uncommitted = new ArrayList<String>();
+			for(int index : indexes)
+				if(!isCommitted[index])
+					uncommitted.add(prepared[index]);
+			throw new PreparedTransactionException("Prepared transactions could not be committed!", uncommitted, ex);
+		}
+	}
+
+	/**
+	 * Runs the statement on every shard, so it suits DDL rather than inserts.
+	 *
+	 * @return Rows affected on all shards together.
+	 */
+	public long execute(String sql, Parameters params) throws Exception {
+		long ret = 0;
+		for(long count : scatter(allShards(), shard -> shard.execute(sql, params)))
+			ret += count;
+		return ret;
+	}
+	public long execute(String sql) throws Exception {
+		return execute(sql, null);
+	}
+
+	/**
+	 * Moves the rows of the shards' tables into the first one.
+	 */
+	private <R extends Row> Table<R> merge(List<Table<R>> tables) {
+		Table<R> ret = tables.get(0);
+		int size = 0;
+		for(Table<R> table : tables)
+			size += table.size();
+		ret.ensureCapacity(size);
+
+		for(int cnt = 1; cnt < tables.size(); cnt++) {
+			for(R row : tables.get(cnt)) {
+				ret.add(row);
+				ret.markClean(row);
+			}
+		}
+		return ret;
+	}
+	public <R extends Row> Table<R> fill(Factory<R> rowFactory, String sql, Parameters params) throws Exception {
+		return merge(scatter(allShards(), shard -> shard.fill(rowFactory, sql, params)));
+	}
+	public <R extends Row> Table<R> fill(Factory<R> rowFactory, String sql) throws Exception {
+		return fill(rowFactory, sql, null);
+	}
+	public <R extends Row> Table<R> fillBinary(Factory<R> rowFactory, String sql, Parameters params) throws Exception {
+		return merge(scatter(allShards(), shard -> shard.fillBinary(rowFactory, sql, params)));
+	}
+	public <R extends Row> Table<R> fillBinary(Factory<R> rowFactory, String sql) throws Exception {
+		return fillBinary(rowFactory, sql, null);
+	}
+	public ColumnarTable fillColumnar(String sql, Parameters params) throws Exception {
+		List<ColumnarTable> tables = scatter(allShards(), shard -> shard.fillColumnar(sql, params));
+		ColumnarTableImp ret = (ColumnarTableImp) tables.get(0);
+		for(int cnt = 1; cnt < tables.size(); cnt++)
+			ret.append((ColumnarTableImp) tables.get(cnt));
+		return ret;
+	}
+	public ColumnarTable fillColumnar(String sql) throws Exception {
+		return fillColumnar(sql, null);
+	}
+
+	/**
+	 * Streams the shards one after the other; each shard's stream holds its
+	 * transaction open until the combined stream is closed.
+	 */
+	public <R extends Row> Stream<R> stream(Factory<R> rowFactory, String sql, Parameters params) throws Exception {
+		Stream<R> ret = Stream.empty();
+		try {
+			for(ConnectionImp shard : shards)
+				ret = Stream.concat(ret, shard.stream(rowFactory, sql, params));
+		}
+		catch(Exception ex) {
+			ret.close();
+			throw ex;
+		}
+		return ret;
+	}
+	public <R extends Row> Stream<R> stream(Factory<R> rowFactory, String sql) throws Exception {
+		return stream(rowFactory, sql, null);
+	}
+
+	public <R extends Row, K> Map<K, R> fillByKeys(Factory<R> rowFactory, String tableName, String keyColumn, Collection<K> keys) throws Exception {
+		Map<K, R> found = new HashMap<K, R>();
+		for(Map<K, R> rows : scatter(allShards(), shard -> shard.fillByKeys(rowFactory, tableName, keyColumn, keys)))
+			found.putAll(rows);
+
+		Map<K, R> ret = new LinkedHashMap<K, R>();
+		for(K key : keys) {
+			R row = found.get(key);
+			if(row != null)
+				ret.put(key, row);
+		}
+		return ret;
+	}
+	/**
+	 * Looks each GUID up on its own shard only.
+	 */
+	public <R extends VersionedRow> Map<UUID, R> fillByGuids(Factory<R> rowFactory, String tableName, Collection<UUID> guids) throws Exception {
+		Map<Integer, List<UUID>> partitions = new LinkedHashMap<Integer, List<UUID>>();
+		for(UUID guid : new LinkedHashSet<UUID>(guids))
+			if(guid != null)
+				partitions.computeIfAbsent(shardOf(guid), shard -> new ArrayList<UUID>()).add(guid);
+
+		Map<UUID, R> found = new HashMap<UUID, R>();
+		List<Integer> indexes = new ArrayList<Integer>(partitions.keySet());
+		for(Map<UUID, R> rows : scatter(indexes, shard -> shard.fillByGuids(rowFactory, tableName, partitions.get(shards.indexOf(shard)))))
+			found.putAll(rows);
+
+		Map<UUID, R> ret = new LinkedHashMap<UUID, R>();
+		for(UUID guid : guids) {
+			R row = found.get(guid);
+			if(row != null)
+				ret.put(guid, row);
+		}
+		return ret;
+	}
+
+	public <R extends Row> long save(Table<R> table) throws Exception {
+		long ret = 0;
+		for(long count : scatter(table, (shard, rows, writeBack) -> shard.save(rows, writeBack)))
+			ret += count;
+		return ret;
+	}
+	public <R extends Row> Map<R, Long> saveBatch(Table<R> table) throws Exception {
+		Map<R, Long> ret = new LinkedHashMap<R, Long>();
+		for(Map<R, Long> counts : scatter(table, (shard, rows, writeBack) -> shard.saveBatch(rows, writeBack)))
+			ret.putAll(counts);
+		return ret;
+	}
+	public <R extends Row> long load(Table<R> table) throws Exception {
+		long ret = 0;
+		for(long count : scatter(table, (shard, rows, writeBack) -> shard.load(table, rows, writeBack)))
+			ret += count;
+		return ret;
+	}
+	public <R extends VersionedRow> Set<UUID> update(Table<R> table) throws Exception {
+		Set<UUID> ret = new LinkedHashSet<UUID>();
+		for(Set<UUID> conflicts : scatter(table, (shard, rows, writeBack) -> shard.update(table, rows, writeBack)))
+			ret.addAll(conflicts);
+		return ret;
+	}
+	public <R extends VersionedRow> Set<UUID> upsert(Table<R> table, UpsertRule rule) throws Exception {
+		Set<UUID> ret = new LinkedHashSet<UUID>();
+		for(Set<UUID> skipped : scatter(table, (shard, rows, writeBack) -> shard.upsert(table, rows, rule, writeBack)))
+			ret.addAll(skipped);
+		return ret;
+	}
+
+	public void begin() throws Exception { scatter(allShards(), shard -> { shard.begin(); return null; }); }
+	public void commit() throws Exception {
+		if(commitRule == CommitRule.TwoPhase)
+			commitTwoPhase(inTransaction(allShards()), new boolean[shards.size()]);
+		else
+			scatter(allShards(), shard -> { shard.commit(); return null; });
+	}
+	public void rollback() throws Exception { scatter(allShards(), shard -> { shard.rollback(); return null; }); }
+}
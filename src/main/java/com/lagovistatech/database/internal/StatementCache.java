@@ -0,0 +1,105 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The statement cache keeps the most recently used prepared statements of a
+ * connection keyed by their SQL text.  The least recently used statement is
+ * closed and dropped once the cache is full.
+ */
+public class StatementCache {
+	public StatementCache(int capacity) {
+		this.capacity = capacity;
+	}
+
+	private LinkedHashMap<String, PreparedStatement> statements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+
+	private int capacity;
+	public int getCapacity() { return capacity; }
+	public void setCapacity(int value) {
+		capacity = value;
+		trim();
+	}
+	/**
+	 * @return True if prepared statements are kept after use.
+	 */
+	public boolean isCaching() { return capacity > 0; }
+
+	private long hits = 0;
+	public long getHits() { return hits; }
+	private long misses = 0;
+	public long getMisses() { return misses; }
+	private long evictions = 0;
+	public long getEvictions() { return evictions; }
+
+	/**
+	 * Returns the cached statement for the SQL or prepares a new one, caching it
+	 * when caching is enabled.
+	 * 
+	 * @param connection Connection to prepare the statement on.
+	 * @param sql SQL of the statement.
+	 * @return Prepared statement.
+	 * @throws Exception Errors encountered.
+	 */
+	public PreparedStatement prepare(Connection connection, String sql) throws Exception {
+		PreparedStatement ret = statements.get(sql);
+		if(ret != null) {
+			hits++;
+			return ret;
+		}
+		
+		misses++;
+		// scrollable so fills can size their table before reading
+		ret = connection.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+		if(isCaching()) {
+			statements.put(sql, ret);
+			trim();
+		}
+		return ret;
+	}
+	private void trim() {
+		Iterator<Map.Entry<String, PreparedStatement>> iterator = statements.entrySet().iterator();
+		while(statements.size() > Math.max(capacity, 0) && iterator.hasNext()) {
+			PreparedStatement stmt = iterator.next().getValue();
+			iterator.remove();
+			evictions++;
+			close(stmt);
+		}
+	}
+	
+	/**
+	 * Closes and drops all cached statements.
+	 */
+	public void close() {
+		for(PreparedStatement stmt : statements.values())
+			close(stmt);
+		statements.clear();
+	}
+	private void close(PreparedStatement stmt) {
+		try { stmt.close(); }
+		catch(Exception ex) { /* do nothing */ }
+	}
+}
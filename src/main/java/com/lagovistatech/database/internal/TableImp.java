@@ -18,18 +18,21 @@
 */
 package com.lagovistatech.database.internal;
 
-import java.util.Collection;
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.ListIterator;
 
 import com.lagovistatech.Factory;
 import com.lagovistatech.database.Adapter;
+import com.lagovistatech.database.ColumnIndex;
 import com.lagovistatech.database.Row;
+import com.lagovistatech.database.SaveCommand;
 import com.lagovistatech.database.Table;
 
-public class TableImp<R extends Row> implements Table<R> {
+public class TableImp<R extends Row> extends AbstractList<R> implements Table<R> {
 	public TableImp(Factory<R> rowFactory, List<R> rows) {
 		this.rowFactory = rowFactory;
 		this.rows = rows;
@@ -52,52 +55,178 @@ public class TableImp<R extends Row> implements Table<R> {
 	public HashMap<String, String> getSchema() { return schema; }
 	public void setSchema(HashMap<String, String> value) { schema = value; }
 
+	private ColumnIndex columnIndex;
+	public ColumnIndex getColumnIndex() { return columnIndex; }
+	public void setColumnIndex(ColumnIndex value) { columnIndex = value; }
+
 	private Factory<R> rowFactory;
 	private List<R> rows;
 	public R createRow() throws Exception {
 		R row = rowFactory.create();
 		row.setTable(this);
-		this.rows.add(row);
+		add(row);
 		return row; 
 	}
 	public String generateSave(Adapter adapter) throws Exception {
-		String ret = "";
-		for(R row : rows) {
-			String temp = row.generateSave(adapter);
-			if(temp != null)
-				ret += temp;
+		StringBuilder ret = new StringBuilder();
+		for(SaveCommand command : adapter.coalesce(generateSaveCommands(adapter)))
+			ret.append(command.toLiteralSql(adapter)).append(";\n");
+		return ret.toString();
+	}
+	public List<SaveCommand> generateSaveCommands(Adapter adapter) throws Exception {
+		List<SaveCommand> ret = new ArrayList<SaveCommand>();
+		for(R row : dirty) {
+			SaveCommand command = row.generateSaveCommand(adapter);
+			if(command != null)
+				ret.add(command);
 		}
 		return ret;
 	}
 
 
-	public int size() { return rows.size(); }
-	public boolean isEmpty() { return rows.isEmpty(); }
+	public void ensureCapacity(int capacity) {
+		if(rows instanceof ChunkedList)
+			((ChunkedList<R>) rows).ensureCapacity(capacity);
+		else if(rows instanceof ArrayList)
+			((ArrayList<R>) rows).ensureCapacity(capacity);
+	}
 
-	public R get(int index) { return rows.get(index); }
-	public R set(int index, R row) { return rows.set(index, row); }
-	public void add(int index, R row) { rows.add(row); }
-	public boolean add(R row) { return rows.add(row); }
-	public boolean remove(Object row) { return rows.remove(row); }
-	public R remove(int index) { return rows.remove(index); }
-	
-	public boolean addAll(Collection<? extends R> collection) { return rows.addAll(collection); }
-	public boolean addAll(int index, Collection<? extends R> collection) { return rows.addAll(collection); }
-	public boolean removeAll(Collection<?> collection) { return rows.removeAll(collection); }
-	public boolean retainAll(Collection<?> collection) { return rows.retainAll(collection); }
-	public void clear() { rows.clear(); }
+	private boolean isIdentityIndexed = false;
+	/**
+	 * Positions of the rows by identity; null when it must be rebuilt, such
+	 * as after a row was added twice.
+	 */
+	private IdentityHashMap<Object, Integer> positions;
+	public boolean getIsIdentityIndexed() { return isIdentityIndexed; }
+	public void setIsIdentityIndexed(boolean value) {
+		isIdentityIndexed = value;
+		positions = null;
+	}
+	private IdentityHashMap<Object, Integer> getPositions() {
+		if(positions == null) {
+			positions = new IdentityHashMap<Object, Integer>(rows.size() * 2);
+			for(int cnt = rows.size() - 1; cnt >= 0; cnt--)
+				positions.put(rows.get(cnt), cnt);
+		}
+		return positions;
+	}
+	/**
+	 * Moves the positions of the rows from the index on to where they are
+	 * now, so only the rows after a change are visited.
+	 */
+	private void reposition(int index) {
+		for(int cnt = index; cnt < rows.size(); cnt++)
+			positions.put(rows.get(cnt), cnt);
+	}
+	/**
+	 * @return True if the positions are kept and the row is not yet in the
+	 * table, so they can be updated in place.
+	 */
+	private boolean isRepositionable(R row) {
+		if(positions != null && positions.size() == rows.size() && !positions.containsKey(row))
+			return true;
+		positions = null;
+		return false;
+	}
+
+	private LinkedHashSet<R> dirty = new LinkedHashSet<R>();
+	private boolean isDirtyTracked = true;
+	/**
+	 * @param value False for tables of rows that are not kept, such as
+	 * streamed rows, so changed rows are not held for saving.
+	 */
+	void setIsDirtyTracked(boolean value) {
+		isDirtyTracked = value;
+		if(!value)
+			dirty.clear();
+	}
+	@SuppressWarnings("unchecked")
+	public void markDirty(Row row) {
+		if(isDirtyTracked)
+			dirty.add((R) row);
+	}
+	public List<R> getDirtyRows() { return new ArrayList<R>(dirty); }
+	public void markClean(Row row) { dirty.remove(row); }
+	/**
+	 * Rows added from elsewhere may carry unsaved changes.
+	 */
+	private void adopt(R row) {
+		if(row.getTable() != this) {
+			row.setTable(this);
+			markDirty(row);
+		}
+	}
+	/**
+	 * Rows no longer in the table must not mark themselves dirty in it.
+	 */
+	private void release(R row) {
+		dirty.remove(row);
+		if(row.getTable() == this)
+			row.setTable(null);
+	}
 
-	public boolean contains(Object row) { return rows.contains(row); }
-	public boolean containsAll(Collection<?> collection) { return rows.containsAll(collection); }
+	public int size() { return rows.size(); }
 
-	public int indexOf(Object row) { return rows.indexOf(row); }
-	public int lastIndexOf(Object row) { return rows.lastIndexOf(row); }
-	
-	public Iterator<R> iterator() { return rows.iterator(); }
-	public ListIterator<R> listIterator() { return rows.listIterator(); }
-	public ListIterator<R> listIterator(int index) { return rows.listIterator(index); }
+	public R get(int index) { return rows.get(index); }
+	public R set(int index, R row) { 
+		adopt(row);
+		if(rows.get(index) == row)
+			return row;
+		
+		boolean isKept = isRepositionable(row);
+		R ret = rows.set(index, row);
+		release(ret);
+		if(isKept) {
+			positions.remove(ret);
+			positions.put(row, index);
+		}
+		return ret;
+	}
+	public void add(int index, R row) { 
+		adopt(row);
+		boolean isKept = isRepositionable(row);
+		rows.add(index, row);
+		modCount++;
+		if(isKept)
+			reposition(index);
+	}
+	public R remove(int index) { 
+		boolean isKept = positions != null && positions.size() == rows.size();
+		R ret = rows.remove(index);
+		modCount++;
+		release(ret);
+		if(isKept) {
+			positions.remove(ret);
+			reposition(index);
+		}
+		else
+			positions = null;
+		return ret;
+	}
+	public void clear() { 
+		for(R row : rows)
+			if(row.getTable() == this)
+				row.setTable(null);
+		rows.clear();
+		modCount++;
+		positions = null;
+		dirty.clear();
+	}
 
-	public Object[] toArray() { return rows.toArray(); }
-	public <T> T[] toArray(T[] target) { return rows.toArray(target); }	
-	public List<R> subList(int fromIndex, int toIndex) { return rows.subList(fromIndex, toIndex); }
+	public int indexOf(Object row) {
+		if(!isIdentityIndexed)
+			return super.indexOf(row);
+		
+		Integer ret = getPositions().get(row);
+		return ret == null ? -1 : ret;
+	}
+	public boolean contains(Object row) { return indexOf(row) >= 0; }
+	public boolean remove(Object row) {
+		int index = indexOf(row);
+		if(index < 0)
+			return false;
+		
+		remove(index);
+		return true;
+	}
 }
@@ -0,0 +1,54 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.lagovistatech.Factory;
+
+/**
+ * Creates time ordered (version 7) GUIDs: 48 bits of Unix milliseconds, a 12
+ * bit counter, and 62 random bits.  GUIDs created in the same millisecond
+ * take the next counter value, carrying into the milliseconds when it runs
+ * out, so GUIDs from this factory always increase.  Thread safe without
+ * locking.
+ */
+public class TimeOrderedGuidFactory implements Factory<UUID> {
+	/**
+	 * Milliseconds and counter of the last GUID, as milliseconds shifted left
+	 * twelve bits plus the counter.
+	 */
+	private AtomicLong last = new AtomicLong();
+
+	public UUID create() {
+		long now = System.currentTimeMillis() << 12;
+		long previous;
+		long next;
+		do {
+			previous = last.get();
+			next = Math.max(now, previous + 1);
+		} while(!last.compareAndSet(previous, next));
+
+		long mostSignificant = (next >>> 12) << 16 | 0x7000L | (next & 0xFFFL);
+		long leastSignificant = ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL | 0x8000000000000000L;
+		return new UUID(mostSignificant, leastSignificant);
+	}
+}
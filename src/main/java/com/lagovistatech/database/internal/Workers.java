@@ -0,0 +1,69 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Daemon threads running calls on several connections at the same time.
+ */
+class Workers {
+	private Workers() {}
+
+	private static ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "connection-worker");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Runs the calls concurrently and waits for all of them, throwing the
+	 * first call's error if any failed.
+	 *
+	 * @return Results in the order of the calls.
+	 */
+	static <T> List<T> invokeAll(List<Callable<T>> calls) throws Exception {
+		List<Future<T>> futures = new ArrayList<Future<T>>();
+		for(Callable<T> call : calls)
+			futures.add(workers.submit(call));
+
+		List<T> ret = new ArrayList<T>();
+		Exception error = null;
+		for(Future<T> future : futures) {
+			try {
+				ret.add(future.get());
+			}
+			catch(ExecutionException ex) {
+				ret.add(null);
+				if(error == null)
+					error = ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+			}
+		}
+		if(error != null)
+			throw error;
+
+		return ret;
+	}
+}
@@ -0,0 +1,67 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database.internal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.lagovistatech.database.Row;
+import com.lagovistatech.database.Table;
+
+/**
+ * Values the database returned for saved rows, written back into the rows
+ * once the statements have run.  Rows saved on several connections at once
+ * are then changed on one thread.
+ */
+class WriteBack {
+	private List<Row> rows = new ArrayList<Row>();
+	private List<String[]> columns = new ArrayList<String[]>();
+	private List<Object[]> values = new ArrayList<Object[]>();
+	private Set<Row> deleted = Collections.newSetFromMap(new IdentityHashMap<Row, Boolean>());
+
+	/**
+	 * @param row Row that was saved; rows marked for deletion are removed.
+	 * @param columns Names of the returned columns.
+	 * @param values Returned values in column order.
+	 */
+	void add(Row row, String[] columns, Object[] values) {
+		if(row.getIsDeleted()) {
+			deleted.add(row);
+			return;
+		}
+
+		this.rows.add(row);
+		this.columns.add(columns);
+		this.values.add(values);
+	}
+
+	/**
+	 * Accepts the changes of the saved rows and removes the deleted rows from
+	 * the table.
+	 */
+	void apply(Table<?> table) throws Exception {
+		for(int cnt = 0; cnt < rows.size(); cnt++)
+			rows.get(cnt).acceptChanges(columns.get(cnt), values.get(cnt));
+		if(!deleted.isEmpty())
+			table.removeIf(deleted::contains);
+	}
+}
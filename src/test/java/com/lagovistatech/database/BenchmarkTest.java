@@ -0,0 +1,138 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.sql.ResultSet;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import com.lagovistatech.Factory;
+import com.lagovistatech.database.internal.BindingPlan;
+
+/**
+ * Benchmarks are skipped unless run with -Dbenchmark=true.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class BenchmarkTest {
+	private static final int ROWS = 200000;
+	private static final int ROUNDS = 5;
+	
+	private Connection createConnection() {
+		Connection connection = ConnectionFactory.instanciate();
+		connection.setServer("localhost");
+		connection.setPort(54320);
+		connection.setDatabase("postgres");
+		connection.setUser("postgres");
+		connection.setPassword("postgres");
+		return connection;
+	}
+	private String rowsSql() {
+		return "SELECT gen_random_uuid() AS \"GUID\", 1::BIGINT AS \"Version\", "
+			+ "n AS \"Int\", n::BIGINT * 1000 AS \"BigInt\", n / 3.0 AS \"Numeric\", n::FLOAT8 AS \"Double\", "
+			+ "'Row ' || n AS \"Text\", NOW()::TIMESTAMP AS \"TimeStamp\", n % 2 = 0 AS \"Boolean\" "
+			+ "FROM generate_series(1, " + ROWS + ") n";
+	}
+	
+	@Test
+	public void CopyFrom_BindingPlan() throws Exception {
+		Connection connection = createConnection();
+		try {
+			connection.open();
+			Adapter adapter = connection.getAdapter();
+			
+			long before = Long.MAX_VALUE;
+			long after = Long.MAX_VALUE;
+			for(int round = 0; round < ROUNDS; round++) {
+				try(ResultSet rs = adapter.fill(rowsSql())) {
+					long start = System.nanoTime();
+					while(rs.next())
+						VersionedRowFactory.instance.create().copyFrom(rs);
+					before = Math.min(before, System.nanoTime() - start);
+				}
+				
+				try(ResultSet rs = adapter.fill(rowsSql())) {
+					long start = System.nanoTime();
+					BindingPlan plan = new BindingPlan(rs.getMetaData());
+					while(rs.next())
+						plan.copy(rs, VersionedRowFactory.instance.create());
+					after = Math.min(after, System.nanoTime() - start);
+				}
+			}
+			
+			System.out.println("Row.copyFrom(ResultSet): " + before / ROWS + " ns/row");
+			System.out.println("BindingPlan.copy: " + after / ROWS + " ns/row");
+			assertTrue(after > 0);
+		}
+		finally {
+			connection.close();
+		}
+	}
+	@Test
+	public void Load_TimeOrderedGuids() throws Exception {
+		Connection connection = createConnection();
+		try {
+			connection.open();
+			
+			long random = Long.MAX_VALUE;
+			long timeOrdered = Long.MAX_VALUE;
+			for(int round = 0; round < ROUNDS; round++) {
+				random = Math.min(random, loadGuids(connection, GuidFactory.random));
+				timeOrdered = Math.min(timeOrdered, loadGuids(connection, GuidFactory.timeOrdered));
+			}
+			
+			System.out.println("Random GUID load: " + random / ROWS + " ns/row");
+			System.out.println("Time ordered GUID load: " + timeOrdered / ROWS + " ns/row");
+			assertTrue(timeOrdered > 0);
+		}
+		finally {
+			GuidFactory.setInstance(GuidFactory.random);
+			connection.close();
+		}
+	}
+	/**
+	 * Loads rows into a table indexed by GUID, returning the nanoseconds taken
+	 * and printing the size of the index.
+	 */
+	private long loadGuids(Connection connection, Factory<UUID> guids) throws Exception {
+		String tableName = "Benchmark " + UUID.randomUUID().toString().replace("-", "");
+		connection.execute("CREATE TABLE \"" + tableName + "\" ( \"GUID\" UUID PRIMARY KEY, \"Version\" BIGINT NOT NULL, \"Int\" INT )");
+		try {
+			GuidFactory.setInstance(guids);
+			Table<VersionedRow> table = TableFactory.instanciate(VersionedRowFactory.instance);
+			table.setTableName(tableName);
+			for(int cnt = 0; cnt < ROWS; cnt++)
+				table.createRow().set("Int", cnt);
+			
+			long start = System.nanoTime();
+			connection.load(table);
+			long ret = System.nanoTime() - start;
+			
+			Table<StatefulRow> size = connection.fill(StatefulRowFactory.instance, "SELECT pg_relation_size('\"" + tableName + "_pkey\"') AS \"Size\"");
+			System.out.println((guids == GuidFactory.random ? "Random" : "Time ordered") + " GUID index: " + size.get(0).get("Size") + " bytes");
+			return ret;
+		}
+		finally {
+			connection.execute("DROP TABLE \"" + tableName + "\"");
+		}
+	}
+}
@@ -0,0 +1,345 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.lagovistatech.database.internal.ConnectionImp;
+
+public class ConnectionPoolTest {
+	private ConnectionPool createPool() {
+		ConnectionPool pool = ConnectionPoolFactory.instanciate();
+		pool.setServer("localhost");
+		pool.setPort(54320);
+		pool.setDatabase("postgres");
+		pool.setUser("postgres");
+		pool.setPassword("postgres");
+		return pool;
+	}
+	
+	@Test
+	public void Open_PreWarms() throws Exception {
+		ConnectionPool pool = createPool();
+		pool.setMinimumIdle(3);
+		try {
+			pool.open();
+			assertEquals(3, pool.getIdleCount());
+			assertEquals(0, pool.getActiveCount());
+		}
+		finally {
+			pool.close();
+		}
+	}
+	@Test
+	public void Close_ReturnsAdapter() throws Exception {
+		ConnectionPool pool = createPool();
+		pool.setMinimumIdle(1);
+		try {
+			pool.open();
+			
+			Connection connection = pool.create();
+			connection.open();
+			assertEquals(1, pool.getActiveCount());
+			assertEquals(0, pool.getIdleCount());
+			connection.fill(StatefulRowFactory.instance, "SELECT 1");
+			connection.close();
+
+			// settings belong to the pool
+			connection = pool.create();
+			connection.setPort(1);
+			connection.setDatabase("missing");
+			assertEquals(54320, connection.getPort());
+			connection.open();
+			connection.fill(StatefulRowFactory.instance, "SELECT 1");
+			connection.close();
+			
+			assertEquals(0, pool.getActiveCount());
+			assertEquals(1, pool.getIdleCount());
+			assertEquals(2, pool.getBorrowCount());
+		}
+		finally {
+			pool.close();
+		}
+	}
+	@Test
+	public void Close_RollsBackTransaction() throws Exception {
+		ConnectionPool pool = createPool();
+		pool.setMinimumIdle(1);
+		pool.setMaximumSize(1);
+		try {
+			pool.open();
+			
+			Connection connection = pool.create();
+			connection.open();
+			connection.begin();
+			connection.execute("CREATE TEMPORARY TABLE \"Pooled\" ( ID INT )");
+			connection.close();
+
+			connection = pool.create();
+			connection.open();
+			try {
+				Table<StatefulRow> table = connection.fill(StatefulRowFactory.instance, "SELECT to_regclass('pg_temp.\"Pooled\"')::TEXT AS \"Name\"");
+				assertNull(table.get(0).get("Name"));
+			}
+			finally {
+				connection.close();
+			}
+		}
+		finally {
+			pool.close();
+		}
+	}
+	@Test
+	public void Open_TimesOut() throws Exception {
+		ConnectionPool pool = createPool();
+		pool.setMinimumIdle(0);
+		pool.setMaximumSize(1);
+		pool.setMaximumWait(100);
+		
+		Connection first = pool.create();
+		Connection second = pool.create();
+		try {
+			pool.open();
+			first.open();
+			second.open();
+			fail("Second connection should not have opened!");
+		}
+		catch(Exception ex) {
+			assertTrue(ex.toString().contains("Timed out waiting 100 milliseconds for a pooled connection!"));
+			assertEquals(1, pool.getTimeOutCount());
+		}
+		finally {
+			first.close();
+			second.close();
+			pool.close();
+		}
+	}
+	@Test
+	public void Reopen_KeepsMaximumSize() throws Exception {
+		ConnectionPool pool = createPool();
+		pool.setMinimumIdle(0);
+		pool.setMaximumSize(1);
+		pool.setMaximumWait(100);
+		
+		Connection stale = pool.create();
+		Connection first = pool.create();
+		Connection second = pool.create();
+		try {
+			pool.open();
+			stale.open();
+			pool.close();
+			pool.open();
+			first.open();
+			
+			// the stale permit goes back to the semaphore it came from
+			stale.close();
+			assertEquals(0, pool.getIdleCount());
+			Exception ex = assertThrows(Exception.class, () -> second.open());
+			assertTrue(ex.toString().contains("Timed out waiting 100 milliseconds for a pooled connection!"));
+			
+			first.close();
+			second.open();
+			assertEquals(1, pool.getActiveCount());
+		}
+		finally {
+			stale.close();
+			first.close();
+			second.close();
+			pool.close();
+		}
+	}
+	@Test
+	public void BatchLoader_CoalescesLookups() throws Exception {
+		ConnectionPool pool = createPool();
+		pool.setMinimumIdle(1);
+		String tableName = "Table " + UUID.randomUUID().toString().toLowerCase().replace("-", "");
+		UUID first = UUID.randomUUID();
+		UUID second = UUID.randomUUID();
+		try {
+			pool.open();
+			
+			Connection connection = pool.create();
+			connection.open();
+			try {
+				connection.execute("CREATE TABLE \"" + tableName + "\" ( \"GUID\" UUID PRIMARY KEY, \"Version\" BIGINT NOT NULL )");
+				connection.execute("INSERT INTO \"" + tableName + "\" VALUES ('" + first + "', 1), ('" + second + "', 1)");
+			}
+			finally {
+				connection.close();
+			}
+			
+			BatchLoader<VersionedRow> loader = BatchLoaderFactory.instanciate(pool, VersionedRowFactory.instance, tableName);
+			loader.setWindow(100);
+			try {
+				List<CompletableFuture<VersionedRow>> futures = new ArrayList<CompletableFuture<VersionedRow>>();
+				List<Thread> threads = new ArrayList<Thread>();
+				for(UUID guid : List.of(first, second, first, UUID.randomUUID())) {
+					Thread thread = new Thread(() -> { synchronized(futures) { futures.add(loader.load(guid)); } });
+					threads.add(thread);
+					thread.start();
+				}
+				for(Thread thread : threads)
+					thread.join();
+				
+				int found = 0;
+				for(CompletableFuture<VersionedRow> future : futures)
+					if(future.get(5, TimeUnit.SECONDS) != null)
+						found++;
+				assertEquals(3, found);
+				assertEquals(4, loader.getLoadCount());
+				assertEquals(1, loader.getBatchCount());
+			}
+			finally {
+				loader.close();
+			}
+		}
+		finally {
+			Connection connection = pool.create();
+			connection.open();
+			connection.execute("DROP TABLE IF EXISTS \"" + tableName + "\"");
+			connection.close();
+			pool.close();
+		}
+	}
+	@Test
+	public void ParallelSaver_SavesPartitions() throws Exception {
+		ConnectionPool pool = createPool();
+		// one for the test's own connection and one per partition
+		pool.setMaximumSize(5);
+		String tableName = "Table " + UUID.randomUUID().toString().toLowerCase().replace("-", "");
+		String sql = "SELECT * FROM \"" + tableName + "\"";
+		try {
+			pool.open();
+			
+			Connection connection = pool.create();
+			connection.open();
+			Table<VersionedRow> table;
+			try {
+				connection.execute("CREATE TABLE \"" + tableName + "\" ( \"GUID\" UUID PRIMARY KEY, \"Version\" BIGINT NOT NULL, \"Value\" INT )");
+				table = connection.fill(VersionedRowFactory.instance, sql);
+			}
+			finally {
+				connection.close();
+			}
+			for(int cnt = 0; cnt < 5000; cnt++)
+				table.createRow().set("Value", cnt);
+			
+			ParallelSaver saver = ParallelSaverFactory.instanciate(pool);
+			assertEquals(5000, saver.save(table));
+			assertTrue(table.getDirtyRows().isEmpty());
+			assertEquals(1, table.get(4999).getVersion());
+			
+			for(VersionedRow row : table)
+				row.set("Value", (int) row.get("Value") + 1);
+			table.get(0).setIsDeleted(true);
+			saver.setPartitionRule(PartitionRule.Range);
+			assertEquals(5000, saver.save(table));
+			assertEquals(4999, table.size());
+			assertEquals(2, table.get(0).getVersion());
+			
+			connection = pool.create();
+			connection.open();
+			try {
+				Row totals = connection.fill(StatefulRowFactory.instance, "SELECT COUNT(*) AS \"Rows\", SUM(\"Value\") AS \"Total\" FROM \"" + tableName + "\"").get(0);
+				assertEquals(4999L, totals.get("Rows"));
+				assertEquals(12502499L, ((Number) totals.get("Total")).longValue());
+				
+				for(VersionedRow row : table)
+					row.set("Value", 0);
+				saver.setCommitRule(CommitRule.TwoPhase);
+				if("0".equals(connection.fill(StatefulRowFactory.instance, "SHOW max_prepared_transactions").get(0).get("max_prepared_transactions"))) {
+					assertThrows(Exception.class, () -> saver.save(table));
+					assertEquals(4999, table.getDirtyRows().size());
+					assertEquals(12502499L, ((Number) connection.fill(StatefulRowFactory.instance, "SELECT SUM(\"Value\") AS \"Total\" FROM \"" + tableName + "\"").get(0).get("Total")).longValue());
+				}
+				else {
+					assertEquals(4999, saver.save(table));
+					assertTrue(table.getDirtyRows().isEmpty());
+					assertEquals(0L, ((Number) connection.fill(StatefulRowFactory.instance, "SELECT SUM(\"Value\") AS \"Total\" FROM \"" + tableName + "\"").get(0).get("Total")).longValue());
+				}
+			}
+			finally {
+				connection.close();
+			}
+		}
+		finally {
+			Connection connection = pool.create();
+			connection.open();
+			connection.execute("DROP TABLE IF EXISTS \"" + tableName + "\"");
+			connection.close();
+			pool.close();
+		}
+	}
+	@Test
+	public void ParallelSaver_ReportsUncommitted() throws Exception {
+		ConnectionPool pool = createPool();
+		String tableName = "Table " + UUID.randomUUID().toString().toLowerCase().replace("-", "");
+		try {
+			pool.open();
+			
+			Connection connection = pool.create();
+			connection.open();
+			try {
+				connection.execute("CREATE TABLE \"" + tableName + "\" ( \"GUID\" UUID PRIMARY KEY, \"Version\" BIGINT NOT NULL )");
+				Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, "SELECT * FROM \"" + tableName + "\"");
+				table.createRow().setGuid(UUID.randomUUID());
+				table.createRow().setGuid(UUID.randomUUID());
+				
+				// every commit of a prepared transaction fails
+				ParallelSaver saver = ParallelSaverFactory.instanciate(() -> new ConnectionImp(pool.create().getAdapter()) {
+					public long execute(String sql) throws Exception {
+						if(sql.startsWith("COMMIT PREPARED"))
+							throw new Exception("Connection lost!");
+						return super.execute(sql);
+					}
+				});
+				saver.setMinimumPartitionSize(1);
+				saver.setPartitionRule(PartitionRule.Range);
+				saver.setCommitRule(CommitRule.TwoPhase);
+				PreparedTransactionException ex = assertThrows(PreparedTransactionException.class, () -> saver.save(table));
+				int prepared = 0;
+				for(String id : ex.getTransactionIds()) {
+					prepared += connection.fill(StatefulRowFactory.instance, "SELECT gid FROM pg_prepared_xacts WHERE gid='" + id + "'").size();
+					connection.execute("COMMIT PREPARED '" + id + "'");
+				}
+				assertEquals(2, prepared);
+				assertEquals(2, table.getDirtyRows().size());
+				assertEquals(2, connection.fill(VersionedRowFactory.instance, "SELECT * FROM \"" + tableName + "\"").size());
+			}
+			finally {
+				connection.close();
+			}
+		}
+		finally {
+			Connection connection = pool.create();
+			connection.open();
+			connection.execute("DROP TABLE IF EXISTS \"" + tableName + "\"");
+			connection.close();
+			pool.close();
+		}
+	}
+}
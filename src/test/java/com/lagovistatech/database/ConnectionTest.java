@@ -24,7 +24,13 @@ import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.Instant;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.codec.binary.Hex;
 import org.junit.jupiter.api.Test;
@@ -594,6 +600,231 @@ public class ConnectionTest {
 		}  
 	}
 
+	@Test
+	public void FillBinary_MatchesFill() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			connection.execute("INSERT INTO \"" + tableName + "\" (\"GUID\", \"Version\", \"Type Numeric\", \"Type Decimal\") VALUES (gen_random_uuid(), 1, -1234567.0501, 0.00001)");
+			connection.execute("INSERT INTO \"" + tableName + "\" (\"GUID\", \"Version\") VALUES (gen_random_uuid(), 1)");
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName) + " WHERE \"Version\"=@Version ORDER BY \"Type BigSerial\"";
+			Parameters params = new Parameters();
+			params.put("@Version", 1);
+			Table<VersionedRow> expected = connection.fill(VersionedRowFactory.instance, sql, params);
+			Table<VersionedRow> actual = connection.fillBinary(VersionedRowFactory.instance, sql, params);
+			
+			assertEquals(3, actual.size());
+			assertEquals(expected.getSchema(), actual.getSchema());
+			for(int row = 0; row < expected.size(); row++)
+				for(String column : expected.getSchema().keySet()) {
+					Object value = expected.get(row).get(column);
+					if(value instanceof byte[])
+						assertArrayEquals((byte[]) value, (byte[]) actual.get(row).get(column));
+					else
+						assertEquals(value, actual.get(row).get(column), column);
+				}
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void FillBinary_DuplicateLabels() throws Exception {
+		Connection connection = createConnection();
+		try {
+			connection.open();
+			String sql = "SELECT 'abc'::TEXT AS \"Id\", 7::INT AS \"Id\"";
+			Table<StatefulRow> expected = connection.fill(StatefulRowFactory.instance, sql);
+			Table<StatefulRow> actual = connection.fillBinary(StatefulRowFactory.instance, sql);
+			assertEquals(expected.get(0).get("Id"), actual.get(0).get("Id"));
+		}
+		finally {
+			connection.close();
+		}
+	}
+	@Test
+	public void FillBinary_NumericSpecials() throws Exception {
+		Connection connection = createConnection();
+		try {
+			connection.open();
+			for(String special : new String[] { "Infinity", "NaN", "-Infinity" }) {
+				Exception ex = assertThrows(Exception.class, () -> connection.fillBinary(StatefulRowFactory.instance, "SELECT '" + special + "'::NUMERIC AS \"Value\""));
+				assertEquals("Numeric " + special + " cannot be read as a BigDecimal!", ex.getMessage());
+			}
+			
+			// the copy is abandoned and the connection stays usable
+			Table<StatefulRow> actual = connection.fillBinary(StatefulRowFactory.instance, "SELECT -12.50::NUMERIC AS \"Value\"");
+			assertEquals(new BigDecimal("-12.50"), actual.get(0).get("Value"));
+		}
+		finally {
+			connection.close();
+		}
+	}
+	@Test
+	public void FillColumnar_MatchesFill() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			connection.execute("INSERT INTO \"" + tableName + "\" (\"GUID\", \"Version\") SELECT gen_random_uuid(), n FROM generate_series(2, 200) n");
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName) + " ORDER BY \"Version\"";
+			Table<VersionedRow> expected = connection.fill(VersionedRowFactory.instance, sql);
+			ColumnarTable actual = connection.fillColumnar(sql);
+			
+			assertEquals(200, actual.size());
+			assertEquals(expected.getSchema(), actual.getSchema());
+			for(int row = 0; row < expected.size(); row++)
+				for(String column : expected.getSchema().keySet()) {
+					Object value = expected.get(row).get(column);
+					if(value instanceof byte[])
+						assertArrayEquals((byte[]) value, (byte[]) actual.get(row).get(column));
+					else
+						assertEquals(value, actual.get(row).get(column), column);
+				}
+			
+			long total = 0;
+			for(ColumnarRow row : actual)
+				total += row.getLong("Version");
+			assertEquals(200 * 201 / 2, total);
+			assertEquals(2, actual.getInt(0, "Type Int"));
+			assertTrue(actual.isNull(1, "Type Int"));
+			assertThrows(IndexOutOfBoundsException.class, () -> actual.getInt(200, "Type Int"));
+			assertThrows(IndexOutOfBoundsException.class, () -> actual.getValue(-1, "Type Int"));
+			assertThrows(IllegalArgumentException.class, () -> actual.getBoolean(0, "Type Int"));
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Statement_Cache() throws Exception {
+		Connection connection = createConnection();
+		
+		try {
+			connection.open();
+			connection.getAdapter().setStatementCacheSize(1);
+			
+			Parameters params = new Parameters();
+			params.put("@Value", 1);
+			connection.fill(StatefulRowFactory.instance, "SELECT @Value AS \"Value\"", params);
+			connection.fill(StatefulRowFactory.instance, "SELECT @Value AS \"Value\"", params);
+			connection.fill(StatefulRowFactory.instance, "SELECT @Value + 1 AS \"Value\"", params);
+			
+			assertEquals(1, connection.getAdapter().getStatementCacheHits());
+			assertEquals(2, connection.getAdapter().getStatementCacheMisses());
+			assertEquals(1, connection.getAdapter().getStatementCacheEvictions());
+		}
+		finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void Stream_Rows() throws Exception {
+		Connection connection = createConnection();
+		
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createStatefulTable(connection);
+			connection.execute(
+				"INSERT INTO " + connection.getAdapter().quoteIdentifier(tableName) + " (\"Type Int\") " +
+				"SELECT * FROM generate_series(1, 2500)"
+			);
+			connection.setFetchSize(100);
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName) +
+				" WHERE " + connection.getAdapter().quoteIdentifier("Type Int") + " > @Value";
+			Parameters params = new Parameters();
+			params.put("@Value", 1000);
+
+			long count;
+			try(Stream<StatefulRow> rows = connection.stream(StatefulRowFactory.instance, sql, params)) {
+				count = rows.filter(row -> row.getTable().getSchema().containsKey("Type Int")).count();
+			}
+			
+			assertEquals(1500, count);
+			assertFalse(connection.getAdapter().isInTransaction());
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}
+	}
+	@Test
+	public void Stream_InTransaction() throws Exception {
+		Connection connection = createConnection();
+		
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createStatefulTable(connection);
+			
+			connection.begin();
+			try(Stream<StatefulRow> rows = connection.stream(StatefulRowFactory.instance, "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName))) {
+				List<StatefulRow> list = rows.collect(Collectors.toList());
+				assertEquals(1, list.size());
+				
+				// streamed rows can be saved but are not held by their table
+				list.get(0).set("Type Int", 7);
+				assertNotNull(list.get(0).generateSaveCommand(connection.getAdapter()));
+				assertTrue(list.get(0).getTable().getDirtyRows().isEmpty());
+			}
+			assertTrue(connection.getAdapter().isInTransaction());
+			connection.rollback();
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}
+	}
+
+	@Test
+	public void Stream_RollsBackOnFailure() throws Exception {
+		Connection connection = createConnection();
+		
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createStatefulTable(connection);
+			String table = connection.getAdapter().quoteIdentifier(tableName);
+			String sql = "WITH ins AS (INSERT INTO " + table + " (\"Type Int\") VALUES (@Value) RETURNING *) SELECT * FROM ins";
+			
+			Parameters params = new Parameters();
+			params.put("@Value", 77);
+			assertThrows(IllegalStateException.class, () -> {
+				try(Stream<StatefulRow> rows = connection.stream(StatefulRowFactory.instance, sql, params)) {
+					rows.forEach(row -> { throw new IllegalStateException("Row failed!"); });
+				}
+			});
+			assertFalse(connection.getAdapter().isInTransaction());
+			
+			params.put("@Value", 78);
+			try(Stream<StatefulRow> rows = connection.stream(StatefulRowFactory.instance, sql, params)) {
+				rows.forEach(row -> {});
+			}
+			assertFalse(connection.getAdapter().isInTransaction());
+			
+			// only the insert whose stream closed cleanly was committed
+			ColumnarTable check = connection.fillColumnar("SELECT \"Type Int\" FROM " + table + " WHERE \"Type Int\" IN (77, 78)");
+			assertEquals(1, check.size());
+			assertEquals(78, check.getInt(0, "Type Int"));
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}
+	}
+
 	@Test
 	public void Check_SqlMappings() throws Exception {
 		Connection connection = createConnection();
@@ -785,6 +1016,568 @@ public class ConnectionTest {
 		}			
 	}	
 	
+	@Test
+	public void SaveBatch_Versioned() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			connection.setBatchSize(2);
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName);
+			Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, sql);
+			table.get(0).set("Type BigInt", 1024);
+			for(int cnt = 0; cnt < 5; cnt++)
+				table.createRow().set("Type Int", cnt);
+			
+			Map<VersionedRow, Long> counts = connection.saveBatch(table);
+			assertEquals(6, counts.size());
+			for(Long count : counts.values())
+				assertEquals(1, count);
+			assertTrue(table.getDirtyRows().isEmpty());
+			assertEquals(2, table.get(0).getVersion());
+			assertEquals(1, table.get(5).getVersion());
+			assertNotNull(table.get(5).getGuid());
+			
+			// saving again neither inserts the rows twice nor conflicts
+			assertEquals(0, connection.save(table));
+			table.get(0).set("Type BigInt", 2048);
+			table.get(5).set("Type Int", 50);
+			assertEquals(2, connection.save(table));
+			assertTrue(table.getDirtyRows().isEmpty());
+			
+			table = connection.fill(VersionedRowFactory.instance, sql);
+			assertEquals(6, table.size());
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}	
+	
+	@Test
+	public void Save_CoalescedInserts() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			connection.getAdapter().setMaximumInsertRows(2);
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName);
+			Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, sql);
+			table.get(0).set("Type BigInt", 1024);
+			for(int cnt = 0; cnt < 5; cnt++)
+				table.createRow().set("Type Int", cnt);
+			
+			String save = table.generateSave(connection.getAdapter());
+			assertEquals(4, save.split(";\n").length);
+			assertTrue(save.startsWith("UPDATE "));
+
+			connection.save(table);
+			table = connection.fill(VersionedRowFactory.instance, sql);
+			assertEquals(6, table.size());
+			
+			// only consecutive inserts combine, so statements keep their order
+			table.createRow().set("Type Int", 10);
+			table.createRow().set("Type Int", 11);
+			table.get(0).set("Type BigInt", 2048);
+			table.createRow().set("Type Int", 12);
+			save = table.generateSave(connection.getAdapter());
+			String[] statements = save.split(";\n");
+			assertEquals(3, statements.length);
+			assertTrue(statements[0].startsWith("INSERT ") && statements[0].contains("), ("));
+			assertTrue(statements[1].startsWith("UPDATE "));
+			assertTrue(statements[2].startsWith("INSERT ") && !statements[2].contains("), ("));
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Load_Versioned() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			
+			Table<VersionedRow> table = TableFactory.instanciate(VersionedRowFactory.instance);
+			table.setTableName(tableName);
+			for(int cnt = 0; cnt < 100; cnt++) {
+				VersionedRow row = table.createRow();
+				row.set("Type Int", cnt);
+				row.set("Type Text", "Tab\tNew Line\nBack Slash\\ " + cnt);
+				row.set("Type ByteA", new byte[] { 5, 10, 15 });
+				row.set("Type TimeStamp", java.sql.Timestamp.from(Instant.now()));
+				row.set("Type Boolean", cnt % 2 == 0);
+			}
+			table.createRow().set("Type Text", null);
+			
+			assertEquals(101, connection.load(table));
+			assertTrue(table.getDirtyRows().isEmpty());
+			for(VersionedRow row : table) {
+				assertNotNull(row.getGuid());
+				assertEquals(1, row.getVersion());
+			}
+			assertEquals(0, connection.save(table));
+			table.get(7).set("Type BigInt", 7);
+			assertEquals(1, connection.save(table));
+			assertEquals(2, table.get(7).getVersion());
+			// the table is created with a row of its own
+			assertEquals(102, connection.fill(VersionedRowFactory.instance, "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName)).size());
+
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName) + " WHERE " + connection.getAdapter().quoteIdentifier("Type Int") + "=@Int";
+			Parameters params = new Parameters();
+			params.put("@Int", 42);
+			Table<VersionedRow> loaded = connection.fill(VersionedRowFactory.instance, sql, params);
+			assertEquals(1, loaded.size());
+			assertEquals(1, loaded.get(0).getVersion());
+			assertEquals("Tab\tNew Line\nBack Slash\\ 42", loaded.get(0).get("Type Text"));
+			assertArrayEquals(new byte[] { 5, 10, 15 }, (byte[]) loaded.get(0).get("Type ByteA"));
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Save_DirtyRowsOnly() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			connection.execute("INSERT INTO \"" + tableName + "\" (\"GUID\", \"Version\") SELECT gen_random_uuid(), 1 FROM generate_series(1, 999)");
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName);
+			Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, sql);
+			assertTrue(table.getDirtyRows().isEmpty());
+			
+			table.get(10).set("Type Int", 10);
+			table.get(20).setIsDeleted(true);
+			VersionedRow added = table.createRow();
+			added.set("Type Int", 30);
+			
+			List<SaveCommand> commands = table.generateSaveCommands(connection.getAdapter());
+			assertEquals(3, commands.size());
+			assertEquals(SaveCommand.Kind.Update, commands.get(0).getKind());
+			assertEquals(SaveCommand.Kind.Delete, commands.get(1).getKind());
+			assertEquals(SaveCommand.Kind.Insert, commands.get(2).getKind());
+			assertNotNull(added.getGuid());
+			
+			connection.save(table);
+			table = connection.fill(VersionedRowFactory.instance, sql);
+			assertEquals(1000, table.size());
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Update_ModifiedColumnsOnly() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName);
+			Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, sql);
+			VersionedRow row = table.get(0);
+			row.set("Type Text", row.get("Type Text"));
+			assertTrue(table.generateSaveCommands(connection.getAdapter()).isEmpty());
+			
+			row.set("Type Int", 20);
+			assertEquals(Set.of("Type Int"), row.getModified());
+			List<SaveCommand> commands = table.generateSaveCommands(connection.getAdapter());
+			assertEquals(1, commands.size());
+			assertEquals(
+				"UPDATE \"" + tableName + "\" SET \"Type Int\"=?, \"Version\"=? WHERE \"Version\"=? AND \"GUID\"=?", 
+				commands.get(0).getSql()
+			);
+			
+			connection.save(table);
+			table = connection.fill(VersionedRowFactory.instance, sql);
+			assertEquals(20, table.get(0).get("Type Int"));
+			assertEquals(2, table.get(0).getVersion());
+			assertEquals("C", ((String) table.get(0).get("Type Text")).trim());
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Save_WritesBack() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName);
+			Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, sql);
+			VersionedRow row = table.createRow();
+			row.set("Type Int", 40);
+			assertEquals(1, connection.save(table));
+			assertNotNull(row.getGuid());
+			assertEquals(1, row.getVersion());
+			assertNotNull(row.get("Type BigSerial"));
+			assertTrue(row.getModified().isEmpty());
+			assertTrue(table.getDirtyRows().isEmpty());
+			
+			row.set("Type Int", 41);
+			assertEquals(1, connection.save(table));
+			assertEquals(2, row.getVersion());
+			
+			row.setIsDeleted(true);
+			assertEquals(1, connection.save(table));
+			assertEquals(1, table.size());
+			assertEquals(1, connection.fill(VersionedRowFactory.instance, sql).size());
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Save_PipelinesChanges() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName);
+			Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, sql);
+			for(int cnt = 0; cnt < 3; cnt++)
+				table.createRow().set("Type Int", 100 + cnt);
+			assertEquals(3, connection.save(table));
+			
+			VersionedRow stale = table.get(2);
+			connection.execute("UPDATE " + connection.getAdapter().quoteIdentifier(tableName) + " SET \"Version\"=\"Version\"+1 WHERE \"GUID\"='" + stale.getGuid() + "'");
+			table.get(1).set("Type Int", 201);
+			stale.set("Type Int", 202);
+			table.get(3).set("Type Int", 203);
+			table.get(0).setIsDeleted(true);
+			assertEquals(3, connection.save(table));
+			
+			assertEquals(List.of(stale), table.getDirtyRows());
+			assertEquals(2, table.get(0).getVersion());
+			assertEquals(201, table.get(0).get("Type Int"));
+			assertEquals(1, stale.getVersion());
+			assertEquals(2, table.get(2).getVersion());
+			assertEquals(203, table.get(2).get("Type Int"));
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Save_SkipsRemovedRows() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName);
+			Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, sql);
+			VersionedRow removed = table.remove(0);
+			removed.set("Type Int", 40);
+			assertEquals(0, connection.save(table));
+			assertNotEquals(40, connection.fill(VersionedRowFactory.instance, sql).get(0).get("Type Int"));
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void FillByKeys_Guids() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			
+			UUID existing = UUID.fromString("ea7cbaac-35ee-4547-95eb-3112f16f2cff");
+			UUID missing = UUID.randomUUID();
+			Map<UUID, VersionedRow> rows = connection.fillByGuids(VersionedRowFactory.instance, tableName, List.of(missing, existing, existing));
+			assertEquals(Set.of(existing), rows.keySet());
+			assertEquals(2, rows.get(existing).get("Type Int"));
+			assertEquals(tableName, rows.get(existing).getTable().getTableName());
+			
+			Map<Integer, VersionedRow> byInt = connection.fillByKeys(VersionedRowFactory.instance, tableName, "Type Int", List.of(2, 3));
+			assertEquals(Set.of(2), byInt.keySet());
+			assertTrue(connection.fillByGuids(VersionedRowFactory.instance, tableName, List.of()).isEmpty());
+			
+			String name = tableName;
+			assertThrows(Exception.class, () -> connection.fillByKeys(VersionedRowFactory.instance, name, "Type Int", List.of(2L)));
+			assertThrows(Exception.class, () -> connection.fillByKeys(VersionedRowFactory.instance, name, "GUID", List.of(existing.toString())));
+			assertThrows(Exception.class, () -> connection.fillByKeys(VersionedRowFactory.instance, name, "Type Int", List.<Object>of(2, 3L)));
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Upsert_Rules() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			
+			String sql = "SELECT * FROM " + connection.getAdapter().quoteIdentifier(tableName);
+			UUID existing = UUID.fromString("ea7cbaac-35ee-4547-95eb-3112f16f2cff");
+			
+			Table<VersionedRow> table = TableFactory.instanciate(VersionedRowFactory.instance);
+			table.setTableName(tableName);
+			VersionedRow stale = table.createRow();
+			stale.setGuid(existing);
+			stale.setVersion(0L);
+			stale.set("Type Int", 50);
+			VersionedRow created = table.createRow();
+			created.set("Type Int", 51);
+			
+			assertEquals(Set.of(existing), connection.upsert(table, UpsertRule.Versioned));
+			assertNotNull(created.getGuid());
+			assertEquals(1, created.getVersion());
+			assertEquals(List.of(stale), table.getDirtyRows());
+			
+			stale.setVersion(1L);
+			assertTrue(connection.upsert(table, UpsertRule.Versioned).isEmpty());
+			assertEquals(2, stale.getVersion());
+			
+			stale.set("Type Int", 52);
+			assertEquals(Set.of(existing), connection.upsert(table, UpsertRule.Ignore));
+			assertTrue(connection.upsert(table, UpsertRule.Overwrite).isEmpty());
+			assertEquals(3, stale.getVersion());
+			
+			table = connection.fill(VersionedRowFactory.instance, sql + " ORDER BY \"Type Int\"");
+			assertEquals(2, table.size());
+			assertEquals(51, table.get(0).get("Type Int"));
+			assertEquals(52, table.get(1).get("Type Int"));
+			assertEquals(3, table.get(1).getVersion());
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Update_SetBasedConflicts() throws Exception {
+		Connection connection = createConnection();
+	
+		String tableName = null;
+		try {
+			connection.open();
+			tableName = createVersionedTable(connection);
+			
+			String quoted = connection.getAdapter().quoteIdentifier(tableName);
+			UUID other = UUID.randomUUID();
+			connection.execute("INSERT INTO " + quoted + " (\"GUID\", \"Version\", \"Type Int\") VALUES ('" + other + "', 1, 1)");
+			
+			String sql = "SELECT * FROM " + quoted;
+			Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, sql);
+			for(VersionedRow row : table)
+				row.set("Type Int", 30);
+			table.get(0).set("Type Text", "D");
+			
+			connection.execute("UPDATE " + quoted + " SET \"Version\"=5 WHERE \"GUID\"='" + other + "'");
+			Set<UUID> conflicts = connection.update(table);
+			assertEquals(Set.of(other), conflicts);
+			
+			table = connection.fill(VersionedRowFactory.instance, sql + " ORDER BY \"Version\"");
+			assertEquals(2, table.get(0).getVersion());
+			assertEquals(30, table.get(0).get("Type Int"));
+			assertEquals("D", table.get(0).get("Type Text"));
+			assertEquals(other, table.get(1).getGuid());
+			assertEquals(5, table.get(1).getVersion());
+			assertEquals(1, table.get(1).get("Type Int"));
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}		
+	}
+	@Test
+	public void Routing_ReadsFromReplicas() throws Exception {
+		RoutingConnection connection = RoutingConnectionFactory.instanciate();
+		connection.setServer("localhost");
+		connection.setPort(54320);
+		connection.setDatabase("postgres");
+		connection.setUser("postgres");
+		connection.setPassword("postgres");
+		connection.addReplica("localhost", 54320);
+		connection.addReplica("localhost", 54320);
+		
+		try {
+			connection.open();
+			connection.execute("SET application_name = 'Routed'");
+			assertNull(connection.getConsistencyToken());
+			connection.execute("CREATE TEMPORARY TABLE \"Routed\" ( ID INT )");
+			
+			String sql = "SELECT pg_backend_pid() AS \"Pid\", to_regclass('pg_temp.\"Routed\"')::TEXT AS \"Name\"";
+			Row first = connection.fill(StatefulRowFactory.instance, sql).get(0);
+			Row second = connection.fill(StatefulRowFactory.instance, sql).get(0);
+			assertNull(first.get("Name"));
+			assertNull(second.get("Name"));
+			assertNotEquals(first.get("Pid"), second.get("Pid"));
+			
+			connection.begin();
+			Row primary = connection.fill(StatefulRowFactory.instance, sql).get(0);
+			connection.rollback();
+			assertNotNull(primary.get("Name"));
+			assertNotEquals(first.get("Pid"), primary.get("Pid"));
+			assertNotEquals(second.get("Pid"), primary.get("Pid"));
+			
+			connection.setReplicaSelection(ReplicaSelection.LeastLatency);
+			assertNull(connection.fill(StatefulRowFactory.instance, sql).get(0).get("Name"));
+			
+			String token = connection.getConsistencyToken();
+			assertTrue(token.matches("[0-9A-F]+/[0-9A-F]+"));
+			connection.setConsistencyToken("FFFFFFFF/FFFFFFFF");
+			connection.setMaximumReplicaWait(0);
+			assertNull(connection.fill(StatefulRowFactory.instance, sql).get(0).get("Name"));
+			
+			// the round robin continues after the replica last read from
+			connection.setReplicaSelection(ReplicaSelection.RoundRobin);
+			Object pid = connection.fill(StatefulRowFactory.instance, sql).get(0).get("Pid");
+			assertNotEquals(pid, connection.fill(StatefulRowFactory.instance, sql).get(0).get("Pid"));
+			assertEquals(pid, connection.fill(StatefulRowFactory.instance, sql).get(0).get("Pid"));
+		}
+		finally {
+			connection.close();
+		}
+	}
+	@Test
+	public void Sharded_SplitsAndMerges() throws Exception {
+		ShardedConnection connection = ShardedConnectionFactory.instanciate();
+		connection.setDatabase("postgres");
+		connection.setUser("postgres");
+		connection.setPassword("postgres");
+		connection.addShard("localhost", 54320);
+		connection.addShard("localhost", 54320);
+		
+		try {
+			connection.open();
+			// temporary tables are per session, so each shard has its own
+			connection.execute("CREATE TEMPORARY TABLE \"Sharded\" ( \"GUID\" UUID PRIMARY KEY, \"Version\" BIGINT NOT NULL, \"Name\" TEXT )");
+			
+			String sql = "SELECT * FROM \"Sharded\" ORDER BY \"Name\"";
+			Table<VersionedRow> table = connection.fill(VersionedRowFactory.instance, sql);
+			for(int cnt = 0; cnt < 100; cnt++)
+				table.createRow().set("Name", String.format("Row %03d", cnt));
+			assertEquals(100, connection.save(table));
+			assertTrue(table.getDirtyRows().isEmpty());
+			assertEquals(1, table.get(0).getVersion());
+			
+			long total = 0;
+			for(int shard = 0; shard < connection.getShardCount(); shard++) {
+				Table<VersionedRow> rows = connection.getShard(shard).fill(VersionedRowFactory.instance, sql);
+				assertTrue(rows.size() > 0);
+				for(VersionedRow row : rows)
+					assertEquals(shard, ShardMap.hash.shardOf(row.getGuid(), 2));
+				total += rows.size();
+			}
+			assertEquals(100, total);
+			
+			Table<VersionedRow> merged = connection.fill(VersionedRowFactory.instance, sql);
+			assertEquals(100, merged.size());
+			assertTrue(merged.getDirtyRows().isEmpty());
+			for(VersionedRow row : merged)
+				row.set("Name", row.get("Name") + " Changed");
+			assertTrue(connection.update(merged).isEmpty());
+			assertEquals(2, merged.get(99).getVersion());
+			
+			UUID guid = merged.get(42).getGuid();
+			Map<UUID, VersionedRow> found = connection.fillByGuids(VersionedRowFactory.instance, "Sharded", List.of(guid, UUID.randomUUID()));
+			assertEquals(merged.get(42).get("Name"), found.get(guid).get("Name"));
+			assertEquals(1, found.size());
+			
+			ColumnarTable columnar = connection.fillColumnar("SELECT \"Name\", \"Version\" FROM \"Sharded\"");
+			assertEquals(100, columnar.size());
+			Set<Object> names = new HashSet<Object>();
+			for(int row = 0; row < columnar.size(); row++) {
+				assertEquals(2L, columnar.getLong(row, "Version"));
+				names.add(columnar.getValue(row, "Name"));
+			}
+			assertEquals(100, names.size());
+			assertTrue(names.contains("Row 042 Changed"));
+			
+			connection.setShardMap((value, shardCount) -> shardCount - 1);
+			merged.createRow().set("Name", "Row 100");
+			assertEquals(1, connection.save(merged));
+			assertEquals(101, merged.size());
+			assertEquals(1, connection.getShard(1).fill(VersionedRowFactory.instance, "SELECT * FROM \"Sharded\" WHERE \"Name\"='Row 100'").size());
+		}
+		finally {
+			connection.close();
+		}
+	}
+	@Test
+	public void Sharded_TwoPhase() throws Exception {
+		ShardedConnection connection = ShardedConnectionFactory.instanciate();
+		connection.setDatabase("postgres");
+		connection.setUser("postgres");
+		connection.setPassword("postgres");
+		connection.addShard("localhost", 54320);
+		connection.addShard("localhost", 54320);
+		connection.setCommitRule(CommitRule.TwoPhase);
+		
+		// prepared transactions cannot use temporary tables, so the shards share one
+		String tableName = "Table " + UUID.randomUUID().toString().toLowerCase().replace("-", "");
+		try {
+			connection.open();
+			connection.getShard(0).execute("CREATE TABLE \"" + tableName + "\" ( \"GUID\" UUID PRIMARY KEY, \"Version\" BIGINT NOT NULL, \"Name\" TEXT NOT NULL )");
+			if("0".equals(connection.getShard(0).fill(StatefulRowFactory.instance, "SHOW max_prepared_transactions").get(0).get("max_prepared_transactions")))
+				return;
+			
+			UUID bad = UUID.randomUUID();
+			connection.setShardMap((guid, shardCount) -> guid.equals(bad) ? 1 : 0);
+			String sql = "SELECT * FROM \"" + tableName + "\"";
+			Table<VersionedRow> table = connection.getShard(0).fill(VersionedRowFactory.instance, sql);
+			for(int cnt = 0; cnt < 10; cnt++)
+				table.createRow().set("Name", "Row " + cnt);
+			VersionedRow row = table.createRow();
+			row.setGuid(bad);
+			row.set("Name", null);
+			
+			// the second shard fails, so the first does not commit either
+			assertThrows(Exception.class, () -> connection.save(table));
+			assertEquals(11, table.getDirtyRows().size());
+			assertEquals(0, connection.getShard(0).fill(VersionedRowFactory.instance, sql).size());
+			assertEquals(0, connection.getShard(0).fill(StatefulRowFactory.instance, "SELECT gid FROM pg_prepared_xacts WHERE gid LIKE 'sharded-%'").size());
+			
+			row.set("Name", "Row 10");
+			assertEquals(11, connection.save(table));
+			assertTrue(table.getDirtyRows().isEmpty());
+			assertEquals(1, row.getVersion());
+			assertEquals(11, connection.getShard(0).fill(VersionedRowFactory.instance, sql).size());
+		}
+		finally {
+			connection.getShard(0).execute("DROP TABLE IF EXISTS \"" + tableName + "\"");
+			connection.close();
+		}
+	}
 	@Test
 	public void Select_Stateful() throws Exception {
 		Connection connection = createConnection();
@@ -957,6 +1750,36 @@ public class ConnectionTest {
 		}		
 	}	
 	@Test
+	public void Update_StatefulByKey() throws Exception {
+		Connection connection = createConnection();
+
+		String tableName = "Table " + UUID.randomUUID().toString().toLowerCase().replace("-", "");
+		try {
+			connection.open();
+			connection.execute("CREATE TABLE \"" + tableName + "\" (\"Id\" INT PRIMARY KEY, \"Value\" TEXT)");
+			connection.execute("INSERT INTO \"" + tableName + "\" SELECT n, 'Value ' || n FROM generate_series(1, 3) n");
+			
+			String sql = "SELECT * FROM \"" + tableName + "\" ORDER BY \"Id\"";
+			Table<StatefulRow> table = connection.fill(StatefulRowFactory.instance, sql);
+			table.get(0).set("Value", "Changed");
+			table.get(1).setIsDeleted(true);
+			
+			List<SaveCommand> commands = table.generateSaveCommands(connection.getAdapter());
+			assertEquals("UPDATE \"" + tableName + "\" SET \"Value\"=? WHERE \"Id\"=?", commands.get(0).getSql());
+			assertEquals("DELETE FROM \"" + tableName + "\" WHERE \"Id\"=?", commands.get(1).getSql());
+			
+			connection.save(table);
+			table = connection.fill(StatefulRowFactory.instance, sql);
+			assertEquals(2, table.size());
+			assertEquals("Changed", table.get(0).get("Value"));
+			assertEquals(3, table.get(1).get("Id"));
+		}
+		finally {
+			deleteTable(connection, tableName);
+			connection.close();
+		}
+	}
+	@Test
 	public void Delete_Stateful() throws Exception {
 		Connection connection = createConnection();
 
@@ -20,7 +20,15 @@ package com.lagovistatech.database;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 
 import org.junit.jupiter.api.Test;
 
@@ -105,4 +113,76 @@ public class GenericRowTest {
 				
 		assertTrue(row.get("Value") == null);
 	}	
+	@Test
+	public void CopyOf() {
+		HashMap<String, Object> originals = new HashMap<String, Object>();
+		originals.put("Value", false);
+		HashMap<String, Object> changes = new HashMap<String, Object>();
+		
+		StatefulRow stateful = StatefulRow.copyOf(originals, changes);
+		stateful.set("Value", true);
+		assertTrue(changes.isEmpty());
+		assertEquals(Map.of("Value", true), stateful.getChanges());
+		
+		VersionedRow versioned = VersionedRow.copyOf(originals);
+		versioned.set("Value", true);
+		assertEquals(false, originals.get("Value"));
+		assertEquals(true, versioned.get("Value"));
+		
+		VersionedRow kept = new VersionedRow(originals);
+		kept.set("Value", true);
+		assertEquals(true, originals.get("Value"));
+	}
+	@Test
+	public void SharedColumnIndex() {
+		StatefulRow first = new StatefulRow();
+		first.set("A", 1);
+		first.set("B", 2);
+		VersionedRow second = new VersionedRow();
+		second.set("A", 3);
+		second.set("B", 4);
+		
+		ColumnIndex index = ColumnIndex.EMPTY.with("A").with("B");
+		assertSame(index, ColumnIndex.EMPTY.with("A").with("B"));
+		assertEquals(1, index.slotOf("B"));
+		assertEquals(-1, index.slotOf("C"));
+		assertEquals(2, first.get("B"));
+		assertEquals(4, second.get("B"));
+		assertEquals(Map.of("A", 1, "B", 2), first.getChanges());
+		assertTrue(first.getOriginals().isEmpty());
+		
+		// a table's index keeps a bounded number of added indexes
+		ColumnIndex table = ColumnIndex.of(new String[] { "A" });
+		for(int cnt = 0; cnt < ColumnIndex.MAXIMUM_SHARED; cnt++)
+			assertSame(table.with("Column " + cnt), table.with("Column " + cnt));
+		ColumnIndex unshared = table.with("Column " + ColumnIndex.MAXIMUM_SHARED);
+		assertNotSame(unshared, table.with("Column " + ColumnIndex.MAXIMUM_SHARED));
+		assertEquals(1, unshared.slotOf("Column " + ColumnIndex.MAXIMUM_SHARED));
+	}
+	@Test
+	public void TimeOrderedGuids() throws Exception {
+		Callable<List<UUID>> create = () -> {
+			List<UUID> ret = new ArrayList<UUID>();
+			for(int cnt = 0; cnt < 10000; cnt++)
+				ret.add(GuidFactory.timeOrdered.create());
+			return ret;
+		};
+		// results are checked on this thread, so failures fail the test
+		FutureTask<List<UUID>> other = new FutureTask<List<UUID>>(create);
+		new Thread(other).start();
+		List<UUID> mine = create.call();
+		
+		Set<UUID> seen = new HashSet<UUID>();
+		for(List<UUID> guids : List.of(mine, other.get())) {
+			for(int cnt = 0; cnt < guids.size(); cnt++) {
+				UUID guid = guids.get(cnt);
+				assertEquals(7, guid.version());
+				assertEquals(2, guid.variant());
+				if(cnt > 0)
+					assertTrue(Long.compareUnsigned(guids.get(cnt - 1).getMostSignificantBits(), guid.getMostSignificantBits()) < 0);
+				seen.add(guid);
+			}
+		}
+		assertEquals(20000, seen.size());
+	}
 }
@@ -0,0 +1,69 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.lagovistatech.database.internal.ParameterizedQuery;
+
+public class ParameterizedQueryTest {
+	@Test
+	public void Compile_Positional() {
+		ParameterizedQuery query = ParameterizedQuery.compile(
+			"SELECT * FROM t WHERE a=@A AND b=@B AND c=@A", 
+			Set.of("@A", "@B")
+		);
+		
+		assertEquals("SELECT * FROM t WHERE a=? AND b=? AND c=?", query.getSql());
+		assertArrayEquals(new String[] { "@A", "@B", "@A" }, query.getNames());
+	}
+	@Test
+	public void Compile_LongestName() {
+		ParameterizedQuery query = ParameterizedQuery.compile(
+			"SELECT * FROM t WHERE a=@Guid OR a=ANY(@GuidList)", 
+			Set.of("@Guid", "@GuidList")
+		);
+		
+		assertEquals("SELECT * FROM t WHERE a=? OR a=ANY(?)", query.getSql());
+		assertArrayEquals(new String[] { "@Guid", "@GuidList" }, query.getNames());
+	}
+	@Test
+	public void Compile_SkipsQuoted() {
+		ParameterizedQuery query = ParameterizedQuery.compile(
+			"SELECT '@A', E'\\'@A', \"@A\", $$@A$$ -- @A\n, /* @A /* @A */ */ @A", 
+			Set.of("@A")
+		);
+		
+		assertEquals("SELECT '@A', E'\\'@A', \"@A\", $$@A$$ -- @A\n, /* @A /* @A */ */ ?", query.getSql());
+		assertArrayEquals(new String[] { "@A" }, query.getNames());
+	}
+	@Test
+	public void Compile_EscapesQuestionMark() {
+		ParameterizedQuery query = ParameterizedQuery.compile(
+			"SELECT '{}'::JSONB ? 'a', @A", 
+			Set.of("@A")
+		);
+		
+		assertEquals("SELECT '{}'::JSONB ?? 'a', ?", query.getSql());
+	}
+}
@@ -0,0 +1,177 @@
+/*
+
+	Copyright (C) 2021 Lago Vista Technologies LLC
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU Affero General Public License as
+    published by the Free Software Foundation, either version 3 of the
+    License, or (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU Affero General Public License for more details.
+
+    You should have received a copy of the GNU Affero General Public License
+    along with this program.  If not, see <https://www.gnu.org/licenses/>.
+	
+*/
+package com.lagovistatech.database;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+
+public class TableTest {
+	@Test
+	public void Add_AtIndex() throws Exception {
+		Table<StatefulRow> table = TableFactory.instanciate(StatefulRowFactory.instance);
+		StatefulRow first = table.createRow();
+		StatefulRow last = table.createRow();
+		StatefulRow middle = StatefulRowFactory.instanciate();
+		StatefulRow front = StatefulRowFactory.instanciate();
+		
+		table.add(1, middle);
+		table.addAll(0, List.of(front));
+		
+		assertEquals(List.of(front, first, middle, last), table);
+	}
+	@Test
+	public void Insert_AcrossChunks() throws Exception {
+		Table<VersionedRow> table = TableFactory.instanciate(VersionedRowFactory.instance);
+		for(int cnt = 0; cnt < 5000; cnt++)
+			table.createRow().set("Index", cnt);
+		
+		VersionedRow inserted = VersionedRowFactory.instanciate();
+		table.add(1000, inserted);
+		table.remove(3000);
+		
+		assertEquals(5000, table.size());
+		assertSame(inserted, table.get(1000));
+		assertEquals(999, table.get(999).get("Index"));
+		assertEquals(1000, table.get(1001).get("Index"));
+		assertEquals(2998, table.get(2999).get("Index"));
+		assertEquals(3000, table.get(3000).get("Index"));
+		assertEquals(4999, table.get(4999).get("Index"));
+	}
+	@Test
+	public void IdentityIndex() throws Exception {
+		Table<VersionedRow> table = TableFactory.instanciate(VersionedRowFactory.instance);
+		table.setIsIdentityIndexed(true);
+		for(int cnt = 0; cnt < 100; cnt++)
+			table.createRow().set("Index", cnt);
+		
+		VersionedRow row = table.get(50);
+		assertTrue(table.contains(row));
+		assertEquals(50, table.indexOf(row));
+		assertTrue(table.remove(row));
+		assertFalse(table.contains(row));
+		assertEquals(50, table.indexOf(table.get(50)));
+		assertEquals(51, table.get(50).get("Index"));
+		
+		VersionedRow added = table.createRow();
+		assertEquals(99, table.indexOf(added));
+	}
+	@Test
+	public void IdentityIndex_Interleaved() throws Exception {
+		Table<StatefulRow> table = TableFactory.instanciate(StatefulRowFactory.instance);
+		table.setIsIdentityIndexed(true);
+		List<StatefulRow> expected = new ArrayList<StatefulRow>();
+		for(int cnt = 0; cnt < 1000; cnt++)
+			expected.add(table.createRow());
+		
+		Random random = new Random(42);
+		for(int cnt = 0; cnt < 500; cnt++) {
+			StatefulRow removed = expected.remove(random.nextInt(expected.size()));
+			assertTrue(table.remove(removed));
+			assertFalse(table.contains(removed));
+			
+			StatefulRow probe = expected.get(random.nextInt(expected.size()));
+			assertEquals(expected.indexOf(probe), table.indexOf(probe));
+			
+			StatefulRow inserted = StatefulRowFactory.instanciate();
+			int index = random.nextInt(expected.size());
+			expected.add(index, inserted);
+			table.add(index, inserted);
+			assertEquals(index, table.indexOf(inserted));
+			
+			StatefulRow replacement = StatefulRowFactory.instanciate();
+			index = random.nextInt(expected.size());
+			StatefulRow replaced = expected.set(index, replacement);
+			table.set(index, replacement);
+			assertFalse(table.contains(replaced));
+			assertEquals(index, table.indexOf(replacement));
+		}
+		for(int cnt = 0; cnt < expected.size(); cnt++)
+			assertEquals(cnt, table.indexOf(expected.get(cnt)));
+		
+		// a row added twice is still found once either copy is removed
+		StatefulRow twice = table.get(0);
+		table.add(twice);
+		table.remove(0);
+		assertEquals(table.size() - 1, table.indexOf(twice));
+	}
+	@Test
+	public void DirtyRows() throws Exception {
+		Table<VersionedRow> table = TableFactory.instanciate(VersionedRowFactory.instance);
+		table.setTableName("Dirty");
+		String[] columns = new String[] { VersionedRow.COLUMN_GUID, VersionedRow.COLUMN_VERSION, "Value" };
+		table.setColumnIndex(ColumnIndex.of(columns));
+		for(int cnt = 0; cnt < 1000; cnt++)
+			table.createRow().copyFrom(columns, new Object[] { UUID.randomUUID(), Long.valueOf(1), cnt });
+		assertTrue(table.getDirtyRows().isEmpty());
+		
+		table.get(10).set("Value", -1);
+		table.get(500).setIsDeleted(true);
+		table.get(10).set("Value", -2);
+		VersionedRow added = table.createRow();
+		added.set("Value", 1000);
+		
+		assertEquals(List.of(table.get(10), table.get(500), added), table.getDirtyRows());
+		
+		table.remove(500);
+		assertEquals(2, table.getDirtyRows().size());
+		
+		VersionedRow removed = table.remove(0);
+		VersionedRow replaced = table.set(0, VersionedRowFactory.instanciate());
+		assertNull(removed.getTable());
+		assertNull(replaced.getTable());
+		removed.set("Value", -3);
+		replaced.set("Value", -4);
+		assertFalse(table.getDirtyRows().contains(removed));
+		assertFalse(table.getDirtyRows().contains(replaced));
+		
+		VersionedRow cleared = table.get(1);
+		table.clear();
+		assertNull(cleared.getTable());
+		cleared.set("Value", -5);
+		assertTrue(table.getDirtyRows().isEmpty());
+	}
+	@Test
+	public void DirtyRows_Reverted() throws Exception {
+		Table<StatefulRow> table = TableFactory.instanciate(StatefulRowFactory.instance);
+		String[] columns = new String[] { "Id", "Value" };
+		table.setColumnIndex(ColumnIndex.of(columns));
+		StatefulRow row = table.createRow();
+		row.copyFrom(columns, new Object[] { 1, "One" });
+		
+		row.set("Value", "Two");
+		assertEquals(List.of(row), table.getDirtyRows());
+		row.set("Value", "One");
+		assertTrue(table.getDirtyRows().isEmpty());
+		
+		row.setIsDeleted(true);
+		assertEquals(List.of(row), table.getDirtyRows());
+		row.setIsDeleted(false);
+		assertTrue(table.getDirtyRows().isEmpty());
+		
+		row.set("Value", "Three");
+		row.acceptChanges(new String[0], new Object[0]);
+		assertTrue(table.getDirtyRows().isEmpty());
+	}
+}